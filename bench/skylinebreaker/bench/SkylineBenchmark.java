@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.bench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import skylinebreaker.LSDAbstractTree;
+import skylinebreaker.LSDAbstractTree.LSDAbstractTreeFactory;
+import skylinebreaker.LSDPruningTree;
+import skylinebreaker.LSDSharedPruningTree;
+import skylinebreaker.LSDSimpleTree;
+import skylinebreaker.LevelStore;
+import skylinebreaker.SBFork;
+import skylinebreaker.SBSingle;
+import skylinebreaker.data.Distribution;
+import skylinebreaker.data.WorkloadGenerator;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Throughput of whole skyline queries for every engine, tree and data distribution.
+ * {@link #single} runs SBSingle, {@link #parallel} the engines that take a number of threads, 
+ * so only those are repeated for every thread count.
+ * The default parameters are a small matrix that runs in minutes; widen it on the command line, e.g.
+ * {@code -p distribution=CORRELATED,CLUSTERED -p dimensions=2,4,8,10 -p cardinality=1000000,10000000 -p threads=1,2,4,8}.
+ * Run with {@code -prof gc} (or through {@link #main(String[])}) to get the allocation rate.
+ * The skyline size of the last query of each iteration is reported as the secondary result {@code skylineSize}.
+ * The forked JVM runs with {@code skylinebreaker.sweep=false}, so that the engines build their trees in two and three dimensions
+ * as well instead of handing the query over to SBSweep; {@link SweepBenchmark} times SBSweep itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g", "-Dskylinebreaker.sweep=false"})
+@State(Scope.Benchmark)
+public class SkylineBenchmark {
+
+	public enum Engine
+	{
+		SBFork
+		{
+			@Override
+			InputData[] run(final int threads, final LSDAbstractTreeFactory treeFactory, final List<InputData> input, final ScoringFunction scoringFunction) throws InterruptedException
+			{
+				return new SBFork(threads, treeFactory, input.iterator(), scoringFunction).compute();
+			}
+		},
+		SBQuick
+		{
+			@Override
+			InputData[] run(final int threads, final LSDAbstractTreeFactory treeFactory, final List<InputData> input, final ScoringFunction scoringFunction) throws InterruptedException
+			{
+				return skylinebreaker.SBQuick.evaluate(threads, treeFactory, input.iterator(), scoringFunction);
+			}
+		},
+		SBQuickCNN
+		{
+			@Override
+			InputData[] run(final int threads, final LSDAbstractTreeFactory treeFactory, final List<InputData> input, final ScoringFunction scoringFunction) throws InterruptedException
+			{
+				return skylinebreaker.SBQuickCNN.evaluate(threads, treeFactory, input.iterator(), scoringFunction);
+			}
+		};
+		
+		abstract InputData[] run(final int threads, final LSDAbstractTreeFactory treeFactory, final List<InputData> input, final ScoringFunction scoringFunction) throws InterruptedException;
+	}
+	
+	public enum Tree
+	{
+		LSDSimpleTree, LSDPruningTree, LSDSharedPruningTree;
+		
+		LSDAbstractTreeFactory factory()
+		{
+			switch(this)
+			{
+			case LSDPruningTree: return new LSDPruningTree.LSDPruningTreeFactory();
+			case LSDSharedPruningTree: return new LSDSharedPruningTree.LSDSharedPruningTreeFactory();
+			default: return new LSDSimpleTree.LSDSimpleTreeFactory();
+			}
+		}
+	}
+	
+	static final int LEVELS = 1024;
+	static final long SEED = 4711;
+	
+	@Param({"LSDSimpleTree", "LSDPruningTree", "LSDSharedPruningTree"})
+	public Tree tree;
+	
+	@Param({"INDEPENDENT", "ANTI_CORRELATED"})
+	public Distribution distribution;
+	
+	@Param({"3", "6"})
+	public int dimensions;
+	
+	@Param({"100000"})
+	public int cardinality;
+	
+	private List<InputData> input;
+	private ScoringFunction scoringFunction;
+	
+	/**
+	 * Parameters of the engines that take a number of threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class Parallel
+	{
+		@Param({"SBFork", "SBQuick", "SBQuickCNN"})
+		public Engine engine;
+		
+		@Param({"1", "4"})
+		public int threads;
+	}
+	
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class SkylineSize
+	{
+		public long skylineSize;
+	}
+	
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		final WorkloadGenerator generator = new WorkloadGenerator(distribution, dimensions, LEVELS, cardinality, SEED);
+		input = generate(generator, cardinality);
+		scoringFunction = generator.getScoringFunction();
+	}
+	
+	static List<InputData> generate(final WorkloadGenerator generator, final int cardinality)
+	{
+		final List<InputData> input = new ArrayList<InputData>(cardinality);
+		for(final Iterator<InputData> it = generator.iterator(Runtime.getRuntime().availableProcessors()); it.hasNext(); )
+			input.add(it.next());
+		return input;
+	}
+	
+	@Benchmark
+	public InputData[] single(final SkylineSize counters) throws InterruptedException
+	{
+		final Iterator<InputData> inputIterator = input.iterator();
+		final LSDAbstractTree lsdTree = tree.factory().get(new LevelStore(scoringFunction), inputIterator.next());
+		while(inputIterator.hasNext()) lsdTree.add(inputIterator.next());
+		final InputData[] skyline = new SBSingle(lsdTree).computeSkyline();
+		counters.skylineSize = skyline.length;
+		return skyline;
+	}
+	
+	@Benchmark
+	public InputData[] parallel(final Parallel parallel, final SkylineSize counters) throws InterruptedException
+	{
+		final InputData[] skyline = parallel.engine.run(parallel.threads, tree.factory(), input, scoringFunction);
+		counters.skylineSize = skyline.length;
+		return skyline;
+	}
+	
+	public static void main(final String[] args) throws RunnerException
+	{
+		final Options options = new OptionsBuilder()
+			.include(SkylineBenchmark.class.getPackage().getName())
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
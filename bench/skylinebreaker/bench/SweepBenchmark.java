@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package skylinebreaker.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import skylinebreaker.SBSweep;
+import skylinebreaker.data.Distribution;
+import skylinebreaker.data.WorkloadGenerator;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Throughput of SBSweep, which the engines hand queries in two and three dimensions over to.
+ * Compare with {@link SkylineBenchmark} at the same dimensionality to choose between the sweep and the trees;
+ * the skyline size is reported as there.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g"})
+@State(Scope.Benchmark)
+public class SweepBenchmark {
+	
+	@Param({"INDEPENDENT", "ANTI_CORRELATED"})
+	public Distribution distribution;
+	
+	@Param({"2", "3"})
+	public int dimensions;
+	
+	@Param({"100000"})
+	public int cardinality;
+	
+	@Param({"1", "4"})
+	public int threads;
+	
+	private List<InputData> input;
+	private ScoringFunction scoringFunction;
+	
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		final WorkloadGenerator generator = new WorkloadGenerator(distribution, dimensions, SkylineBenchmark.LEVELS, cardinality, SkylineBenchmark.SEED);
+		input = SkylineBenchmark.generate(generator, cardinality);
+		scoringFunction = generator.getScoringFunction();
+	}
+	
+	@Benchmark
+	public InputData[] sweep(final SkylineBenchmark.SkylineSize counters) throws InterruptedException
+	{
+		final InputData[] skyline = SBSweep.evaluate(threads, input.iterator(), scoringFunction);
+		counters.skylineSize = skyline.length;
+		return skyline;
+	}
+}
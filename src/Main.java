@@ -25,26 +25,26 @@
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.commons.lang3.time.StopWatch;
-import org.apache.commons.math3.linear.BlockRealMatrix;
-import org.apache.commons.math3.random.CorrelatedRandomVectorGenerator;
-import org.apache.commons.math3.random.GaussianRandomGenerator;
-import org.apache.commons.math3.random.MersenneTwister;
 
+import skylinebreaker.BucketCapacity;
 import skylinebreaker.LSDAbstractTree;
 import skylinebreaker.LSDPruningTree;
 import skylinebreaker.LSDSharedPruningTree;
 import skylinebreaker.LSDSimpleTree;
+import skylinebreaker.LevelStore;
 import skylinebreaker.SBFork;
 import skylinebreaker.SBQuick;
 import skylinebreaker.SBQuickCNN;
 import skylinebreaker.SBSingle;
+import skylinebreaker.data.Distribution;
+import skylinebreaker.data.WorkloadGenerator;
 
-import compat.BasicScoring;
 import compat.InputData;
 import compat.ScoringFunction;
 
@@ -64,7 +64,7 @@ public class Main {
 	
     public static LSDAbstractTree fillLSDTree(LSDAbstractTree.LSDAbstractTreeFactory factory, Iterator<InputData> inputIterator, ScoringFunction scoringFunction) throws IllegalStateException
     {
-    	LSDAbstractTree tree = factory.get(scoringFunction, (InputData) inputIterator.next());
+    	LSDAbstractTree tree = factory.get(new LevelStore(scoringFunction), (InputData) inputIterator.next());
     	while(inputIterator.hasNext()) tree.add((InputData)inputIterator.next());
     	return tree;
     }
@@ -100,7 +100,7 @@ public class Main {
         Iterator<InputData> inputIterator = input.iterator();
         StopWatch sw = new StopWatch();
         sw.start();
-		InputData[] mySkyline = new SBSingle(fillLSDTree(new LSDSimpleTree.LSDSimpleTreeFactory(), inputIterator, scoringFunction)).computeSkyline(scoringFunction);
+		InputData[] mySkyline = new SBSingle(fillLSDTree(new LSDSimpleTree.LSDSimpleTreeFactory(), inputIterator, scoringFunction)).computeSkyline();
 	    sw.stop();
 	    return new ResultInfo(sw.getNanoTime(), mySkyline);
 	}
@@ -120,7 +120,7 @@ public class Main {
         Iterator<InputData> inputIterator = input.iterator();
         StopWatch sw = new StopWatch();
         sw.start();
-		InputData[] mySkyline = new SBSingle(fillLSDTree(new LSDPruningTree.LSDPruningTreeFactory(), inputIterator, scoringFunction)).computeSkyline(scoringFunction);
+		InputData[] mySkyline = new SBSingle(fillLSDTree(new LSDPruningTree.LSDPruningTreeFactory(), inputIterator, scoringFunction)).computeSkyline();
 	    sw.stop();
 	    return new ResultInfo(sw.getNanoTime(), mySkyline);
 	}
@@ -165,71 +165,39 @@ public class Main {
     
     
 	
-	public static void main(String[] args) throws InterruptedException, IllegalStateException {
+	/**
+	 * Calibration mode: measures the best bucket capacity on a generated sample and saves it for the dimensionality.
+	 * Arguments: --calibrate distribution dimensions levels rows
+	 */
+	static void calibrate(String[] args) throws IOException
+	{
+		final WorkloadGenerator generator = new WorkloadGenerator(Distribution.valueOf(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]), 4711);
+		List<InputData> sample = new ArrayList<InputData>();
+		for(Iterator<InputData> it = generator.iterator(Runtime.getRuntime().availableProcessors()); it.hasNext(); )
+			sample.add(it.next());
+		final int capacity = BucketCapacity.calibrate(sample, generator.getScoringFunction());
+		System.out.println("Bucket capacity for " + generator.dimensions + " dimensions: " + capacity);
+	}
+	
+	public static void main(String[] args) throws InterruptedException, IllegalStateException, IOException {
+		
+		if(args.length == 5 && "--calibrate".equals(args[0]))
+		{
+			calibrate(args);
+			return;
+		}
 		
-		final double[] means = new double[] { 10, 10};
 		final int setsize = 100000;
 		final int loops = 5;
 		
-		CorrelatedRandomVectorGenerator generator = 
-				 new CorrelatedRandomVectorGenerator(
-						 means,
-                         new BlockRealMatrix( new double[][] { {10, 5}, {5,  10}  } ),
-                         0.01,
-                         new GaussianRandomGenerator(new MersenneTwister()));
+		final WorkloadGenerator generator = new WorkloadGenerator(Distribution.CORRELATED, 2, 256, setsize, 4711);
 		 
-		List<InputData> list = new LinkedList<InputData>();
-		final int[] dimensions = new int[means.length]; 
-		for(int i = 0; i < dimensions.length; ++i) dimensions[i] = 0;
-		
 		System.out.println("Generating set with size=" + setsize);
-		 outer:
-		 while(list.size() < setsize)
-		 { 
-			
-			final int[] ivec = new int[means.length];
-			{
-				double[] vec = generator.nextVector();
-			 	for(int j = 0; j < vec.length; ++j)
-			 	{
-			 		ivec[j] = (int) (vec[j] * 10);
-			 		if(ivec[j] < 0) continue outer;
-			 		
-			 	}
-			}
-		 	for(int j = 0; j < ivec.length; ++j)
-		 		if(ivec[j] > dimensions[j]) dimensions[j] = ivec[j];
-		 	list.add(new InputData(ivec));
-			
-		 	//System.out.println(Arrays.toString(ivec));
-		}
-		
-		class ProjectiveScoring implements BasicScoring
-		{
-			final int pos;
-			final int maximum;
-			ProjectiveScoring(int i)
-			{
-				this.pos = i;
-				this.maximum = dimensions[i];
-			}
-			@Override
-			public int evaluate(InputData x) {
-				return x.get(pos);
-			}
-
-			@Override
-			public int getMaximum() {
-				return maximum;
-			}
-		}
-		
-		
-		BasicScoring[] scorings = new BasicScoring[dimensions.length];
-		for(int i = 0; i < scorings.length; ++i)
-			scorings[i] = new ProjectiveScoring(i);
+		List<InputData> list = new ArrayList<InputData>(setsize);
+		for(Iterator<InputData> it = generator.iterator(Runtime.getRuntime().availableProcessors()); it.hasNext(); )
+			list.add(it.next());
 		
-		ScoringFunction f = new ScoringFunction(scorings);
+		ScoringFunction f = generator.getScoringFunction();
 		
 		ResultInfo ri = runSBSingle(list, f);
 		System.out.println("Skyline of size=" + ri.skyline.length);
@@ -1,5 +1,9 @@
 package compat;
 
+/**
+ * Implementations used as keys of a {@link skylinebreaker.SkylineCache} should implement equals and hashCode by value,
+ * otherwise a scoring only matches itself.
+ */
 public interface BasicScoring {
 	int evaluate(InputData x);
 	int getMaximum();
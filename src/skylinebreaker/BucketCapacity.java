@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Chooses the capacity of the buckets of the LSD trees per query.
+ * The capacity decides both the quadratic costs of a bucket's local skyline and the depth of the tree, which the pruning relies on.
+ * In this order, the capacity is taken from
+ * <ol>
+ * <li>the system property {@code skylinebreaker.bucketCapacity},</li>
+ * <li>a calibration for the dimensionality, see {@link #calibrate(List, ScoringFunction)},</li>
+ * <li>an estimate: as many rows as fit with their levels into half of the L2 cache, 
+ * but less for more dimensions, since the share of a bucket that is in its local skyline grows with them.</li>
+ * </ol>
+ * Whatever the source, the capacity is clamped to {@value #MIN}..{@value #MAX}.
+ * Calibrations are kept in the file given by {@code skylinebreaker.calibration}, by default {@code .skylinebreaker.properties} in the user's home.
+ */
+public final class BucketCapacity {
+	
+	static final int MIN = 128;
+	static final int MAX = 8192;
+	/** capacity times dimensions of the estimate, 8192 rows for two dimensions down to 1024 for sixteen */
+	static final int ROW_LEVELS = 16384;
+	static final int[] CANDIDATES = {128, 256, 512, 1024, 2048, 4096, 8192};
+	
+	private static final int FIXED = Integer.getInteger("skylinebreaker.bucketCapacity", 0);
+	private static Properties calibrations = null;
+	/** the capacity per dimensionality once it is chosen, 0 if not yet */
+	private static final int[] chosen = new int[64];
+	
+	private BucketCapacity() {}
+	
+	/** the size of the L2 cache, read once on first use */
+	private static final class CacheSize {
+		static final long VALUE = readCacheSize();
+	}
+	
+	public static int get(final int dimensions)
+	{
+		if(FIXED != 0) return clamp(FIXED);
+		if(dimensions < chosen.length && chosen[dimensions] > 0) return chosen[dimensions];
+		final int capacity = choose(dimensions);
+		if(dimensions < chosen.length) chosen[dimensions] = capacity;
+		return capacity;
+	}
+	
+	private static int choose(final int dimensions)
+	{
+		final String calibrated = calibrations().getProperty(key(dimensions));
+		if(calibrated != null)
+		{
+			try
+			{
+				return clamp(Integer.parseInt(calibrated.trim()));
+			}
+			catch(NumberFormatException e)
+			{
+				// a broken calibration falls back to the estimate
+			}
+		}
+		return estimate(dimensions, cacheSize());
+	}
+	
+	static int estimate(final int dimensions, final long cacheSize)
+	{
+		// the levels, the overall level and the row id of a row
+		final long fitting = cacheSize / 2 / (4*(dimensions+2));
+		final long capacity = Math.min(fitting, ROW_LEVELS / Math.max(dimensions, 1));
+		return clamp((int) (capacity & ~63));
+	}
+	
+	static int clamp(final int capacity)
+	{
+		return Math.max(MIN, Math.min(MAX, capacity));
+	}
+	
+	/**
+	 * @return the size of the L2 cache in bytes, from the system property {@code skylinebreaker.cacheSize} or sysfs, defaulting to 256K
+	 */
+	static long cacheSize()
+	{
+		return CacheSize.VALUE;
+	}
+	
+	private static long readCacheSize()
+	{
+		final Long configured = Long.getLong("skylinebreaker.cacheSize");
+		if(configured != null) return configured;
+		final File caches = new File("/sys/devices/system/cpu/cpu0/cache");
+		final File[] indices = caches.listFiles();
+		if(indices != null)
+			for(final File index : indices)
+			{
+				try
+				{
+					if(!"2".equals(readLine(new File(index, "level"))) || "Instruction".equals(readLine(new File(index, "type")))) continue;
+					final String size = readLine(new File(index, "size"));
+					if(size.endsWith("K")) return Long.parseLong(size.substring(0, size.length()-1)) << 10;
+					if(size.endsWith("M")) return Long.parseLong(size.substring(0, size.length()-1)) << 20;
+					return Long.parseLong(size);
+				}
+				catch(IOException ignored) {}
+				catch(NumberFormatException ignored) {}
+			}
+		return 256 << 10;
+	}
+	
+	private static String readLine(final File file) throws IOException
+	{
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			final String line = reader.readLine();
+			if(line == null) throw new IOException("empty " + file);
+			return line.trim();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Builds a tree of the sample for every candidate capacity, measures the best of three runs of its skyline 
+	 * and keeps the fastest capacity for the dimensionality of the scoring function.
+	 * The sample should come from the data, so that the calibration reflects its distribution.
+	 * @return the fastest capacity
+	 */
+	public static int calibrate(final List<InputData> sample, final ScoringFunction scoringFunction) throws IOException
+	{
+		int best = CANDIDATES[0];
+		long bestTime = Long.MAX_VALUE;
+		for(final int capacity : CANDIDATES)
+		{
+			long time = Long.MAX_VALUE;
+			for(int run = 0; run < 3; ++run)
+			{
+				final long start = System.nanoTime();
+				final LevelStore store = new LevelStore(scoringFunction, Boolean.getBoolean("skylinebreaker.blockDominance"), null, capacity);
+				final LSDAbstractTree tree = new LSDSimpleTree(store, sample.get(0));
+				for(int i = 1; i < sample.size(); ++i) tree.add(sample.get(i));
+				new SBSingle(tree).computeTreeSkylineRows();
+				time = Math.min(time, System.nanoTime() - start);
+			}
+			if(time < bestTime)
+			{
+				bestTime = time;
+				best = capacity;
+			}
+		}
+		save(scoringFunction.getDimensionality(), best);
+		return best;
+	}
+	
+	private static String key(final int dimensions)
+	{
+		return "bucketCapacity.d" + dimensions;
+	}
+	
+	private static File file()
+	{
+		final String configured = System.getProperty("skylinebreaker.calibration");
+		return configured != null ? new File(configured) : new File(System.getProperty("user.home"), ".skylinebreaker.properties");
+	}
+	
+	private static synchronized Properties calibrations()
+	{
+		if(calibrations == null)
+		{
+			calibrations = new Properties();
+			final File file = file();
+			if(file.isFile())
+			{
+				try
+				{
+					final InputStream in = new FileInputStream(file);
+					try
+					{
+						calibrations.load(in);
+					}
+					finally
+					{
+						in.close();
+					}
+				}
+				catch(IOException e)
+				{
+					// an unreadable calibration falls back to the estimate
+				}
+			}
+		}
+		return calibrations;
+	}
+	
+	private static synchronized void save(final int dimensions, final int capacity) throws IOException
+	{
+		final Properties properties = calibrations();
+		properties.setProperty(key(dimensions), Integer.toString(capacity));
+		if(dimensions < chosen.length) chosen[dimensions] = capacity;
+		final OutputStream out = new FileOutputStream(file());
+		try
+		{
+			properties.store(out, "skylinebreaker bucket capacities");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker;
+
+import compat.FeatureVector;
+
+/**
+ * Dominance tests on raw level slices (array plus offset).
+ * The results are the codes of {@link FeatureVector#compare(FeatureVector)}: GREATER if the first vector dominates the second,
+ * LESS if it is dominated, SUBSTITUTABLE if both are equal and UNRANKED otherwise.
+ * The variant is chosen once per query by {@link #forDimensionality(int)}.
+ * All variants assume non-negative levels, so that the sign bit of a difference tells which level is smaller.
+ */
+public final class DominanceKernel {
+	
+	static final int GENERIC = 0;
+	static final int D2 = 2;
+	static final int D3 = 3;
+	static final int D4 = 4;
+	static final int D8 = 8;
+	
+	/** maps (worse << 1 | better) to the result code */
+	private static final int[] RESULT = { FeatureVector.SUBSTITUTABLE, FeatureVector.GREATER, FeatureVector.LESS, FeatureVector.UNRANKED };
+	
+	private DominanceKernel() {}
+	
+	static int forDimensionality(final int dimensions)
+	{
+		switch(dimensions)
+		{
+		case 2: return D2;
+		case 3: return D3;
+		case 4: return D4;
+		case 8: return D8;
+		default: return GENERIC;
+		}
+	}
+	
+	static int compare(final int kernel, final int dimensions, final int[] a, final int ao, final int[] b, final int bo)
+	{
+		switch(kernel)
+		{
+		case D2: return compare2(a, ao, b, bo);
+		case D3: return compare3(a, ao, b, bo);
+		case D4: return compare4(a, ao, b, bo);
+		case D8: return compare8(a, ao, b, bo);
+		default: return compare(dimensions, a, ao, b, bo);
+		}
+	}
+	
+	public static int compare2(final int[] a, final int ao, final int[] b, final int bo)
+	{
+		final int a0 = a[ao], a1 = a[ao+1];
+		final int b0 = b[bo], b1 = b[bo+1];
+		final int better = ((a0-b0) | (a1-b1)) >>> 31;
+		final int worse = ((b0-a0) | (b1-a1)) >>> 31;
+		return RESULT[worse << 1 | better];
+	}
+	
+	public static int compare3(final int[] a, final int ao, final int[] b, final int bo)
+	{
+		final int a0 = a[ao], a1 = a[ao+1], a2 = a[ao+2];
+		final int b0 = b[bo], b1 = b[bo+1], b2 = b[bo+2];
+		final int better = ((a0-b0) | (a1-b1) | (a2-b2)) >>> 31;
+		final int worse = ((b0-a0) | (b1-a1) | (b2-a2)) >>> 31;
+		return RESULT[worse << 1 | better];
+	}
+	
+	public static int compare4(final int[] a, final int ao, final int[] b, final int bo)
+	{
+		final int a0 = a[ao], a1 = a[ao+1], a2 = a[ao+2], a3 = a[ao+3];
+		final int b0 = b[bo], b1 = b[bo+1], b2 = b[bo+2], b3 = b[bo+3];
+		final int better = ((a0-b0) | (a1-b1) | (a2-b2) | (a3-b3)) >>> 31;
+		final int worse = ((b0-a0) | (b1-a1) | (b2-a2) | (b3-a3)) >>> 31;
+		return RESULT[worse << 1 | better];
+	}
+	
+	public static int compare8(final int[] a, final int ao, final int[] b, final int bo)
+	{
+		final int a0 = a[ao], a1 = a[ao+1], a2 = a[ao+2], a3 = a[ao+3];
+		final int a4 = a[ao+4], a5 = a[ao+5], a6 = a[ao+6], a7 = a[ao+7];
+		final int b0 = b[bo], b1 = b[bo+1], b2 = b[bo+2], b3 = b[bo+3];
+		final int b4 = b[bo+4], b5 = b[bo+5], b6 = b[bo+6], b7 = b[bo+7];
+		final int better = ((a0-b0) | (a1-b1) | (a2-b2) | (a3-b3) | (a4-b4) | (a5-b5) | (a6-b6) | (a7-b7)) >>> 31;
+		final int worse = ((b0-a0) | (b1-a1) | (b2-a2) | (b3-a3) | (b4-a4) | (b5-a5) | (b6-a6) | (b7-a7)) >>> 31;
+		return RESULT[worse << 1 | better];
+	}
+	
+	public static int compare(final int dimensions, final int[] a, final int ao, final int[] b, final int bo)
+	{
+		int better = 0;
+		int worse = 0;
+		for(int i = 0; i < dimensions; ++i)
+		{
+			final int x = a[ao+i];
+			final int y = b[bo+i];
+			better |= x-y;
+			worse |= y-x;
+			if((better & worse) < 0) return FeatureVector.UNRANKED;
+		}
+		return RESULT[(worse >>> 31) << 1 | (better >>> 31)];
+	}
+}
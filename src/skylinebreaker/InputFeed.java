@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import compat.InputData;
+
+/**
+ * Hands out the input to the tree building workers in chunks, so that a worker synchronizes once per chunk instead of once per element.
+ * Workers claim chunks on demand until the input is exhausted, hence a fast worker simply claims more chunks than a slow one.
+ */
+abstract class InputFeed {
+	static final int MIN_CHUNK = 1 << 12;
+	static final int MAX_CHUNK = 1 << 16;
+	
+	/**
+	 * @return a single element, used to create a tree
+	 * @throws NoSuchElementException if the input is exhausted
+	 */
+	abstract InputData next();
+	
+	/**
+	 * Receives the input, like a {@link LSDAbstractTree}.
+	 */
+	interface Sink
+	{
+		void add(final InputData element);
+		void add(final RowSource source, final long index);
+	}
+	
+	/**
+	 * Adds the next chunk of the input to the sink.
+	 * @param buffer scratch space of the calling worker, at least {@link #MIN_CHUNK} long
+	 * @return false if the input was already exhausted
+	 */
+	abstract boolean feed(final Sink sink, final InputData[] buffer);
+	
+	static InputData[] newBuffer()
+	{
+		return new InputData[MIN_CHUNK];
+	}
+	
+	static InputFeed of(final Iterator<InputData> inputIterator)
+	{
+		return new IteratorFeed(inputIterator);
+	}
+	
+	static InputFeed of(final RowSource source, final int workers)
+	{
+		return new RowSourceFeed(source, workers);
+	}
+	
+	/**
+	 * Scores the input into the store with the given number of workers.
+	 * If interrupted, the workers stop after their current chunk and are waited for, 
+	 * so that none appends to the store once the caller has released it.
+	 * @return the indices of all rows
+	 */
+	int[] load(final LevelStore store, final int processes) throws InterruptedException
+	{
+		final RowList[] lists = new RowList[Math.max(processes, 1)];
+		final Thread[] threads = new Thread[lists.length];
+		for(int i = 0; i < lists.length; ++i)
+		{
+			final RowList list = lists[i] = new RowList(store.appender());
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					final InputData[] buffer = InputFeed.newBuffer();
+					while(!isInterrupted() && feed(list, buffer));
+				}
+			};
+			threads[i].start();
+		}
+		try
+		{
+			for(final Thread thread : threads) thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			for(final Thread thread : threads) thread.interrupt();
+			for(final Thread thread : threads)
+			{
+				while(thread.isAlive())
+				{
+					try
+					{
+						thread.join();
+					}
+					catch(InterruptedException ignored) {}
+				}
+			}
+			throw e;
+		}
+		int size = 0;
+		for(final RowList list : lists) size += list.size;
+		final int[] rows = new int[size];
+		size = 0;
+		for(final RowList list : lists)
+		{
+			System.arraycopy(list.rows, 0, rows, size, list.size);
+			size += list.size;
+		}
+		return rows;
+	}
+	
+	/**
+	 * Collects the indices of the rows appended by one worker.
+	 */
+	static final class RowList implements Sink
+	{
+		private final LevelStore.Appender appender;
+		int[] rows = new int[InputFeed.MIN_CHUNK];
+		int size = 0;
+		
+		RowList(final LevelStore.Appender appender)
+		{
+			this.appender = appender;
+		}
+		
+		void add(final int row)
+		{
+			if(size == rows.length) rows = Arrays.copyOf(rows, size*2);
+			rows[size++] = row;
+		}
+		
+		int[] toArray()
+		{
+			return Arrays.copyOf(rows, size);
+		}
+		
+		@Override
+		public void add(final InputData element)
+		{
+			add(appender.add(element));
+		}
+		
+		@Override
+		public void add(final RowSource source, final long index)
+		{
+			appender.stage(source, index);
+			add(appender.commit());
+		}
+	}
+	
+	/**
+	 * Drains a chunk of the iterator per lock; the size of the input is unknown, so chunks have a fixed size.
+	 */
+	private static final class IteratorFeed extends InputFeed
+	{
+		private final Iterator<InputData> inputIterator;
+		
+		IteratorFeed(final Iterator<InputData> inputIterator)
+		{
+			this.inputIterator = inputIterator;
+		}
+		
+		@Override
+		InputData next()
+		{
+			synchronized(inputIterator)
+			{
+				return inputIterator.next();
+			}
+		}
+		
+		@Override
+		boolean feed(final Sink sink, final InputData[] buffer)
+		{
+			int claimed = 0;
+			synchronized(inputIterator)
+			{
+				while(claimed < buffer.length && inputIterator.hasNext()) buffer[claimed++] = inputIterator.next();
+			}
+			for(int i = 0; i < claimed; ++i)
+			{
+				sink.add(buffer[i]);
+				buffer[i] = null;
+			}
+			return claimed > 0;
+		}
+	}
+	
+	/**
+	 * Claims row ranges with an atomic cursor. The chunks shrink with the remaining rows (guided self-scheduling),
+	 * so that the workers run out of input at nearly the same time.
+	 */
+	private static final class RowSourceFeed extends InputFeed
+	{
+		private final RowSource source;
+		private final AtomicLong cursor = new AtomicLong();
+		private final long size;
+		private final int workers;
+		
+		RowSourceFeed(final RowSource source, final int workers)
+		{
+			this.source = source;
+			this.size = source.size();
+			this.workers = workers;
+		}
+		
+		@Override
+		InputData next()
+		{
+			final long row = cursor.getAndIncrement();
+			if(row >= size) throw new NoSuchElementException();
+			return source.get(row);
+		}
+		
+		@Override
+		boolean feed(final Sink sink, final InputData[] buffer)
+		{
+			final long remaining = size - cursor.get();
+			if(remaining <= 0) return false;
+			final long chunk = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, remaining / (4*workers)));
+			final long from = cursor.getAndAdd(chunk);
+			if(from >= size) return false;
+			final long to = Math.min(size, from + chunk);
+			for(long row = from; row < to; ++row) sink.add(source, row);
+			return true;
+		}
+	}
+}
@@ -28,15 +28,16 @@
 package skylinebreaker;
 
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import compat.FeatureVector;
 import compat.InputData;
 import compat.ScoringFunction;
 
-public abstract class LSDAbstractTree {
-	final static int BUCKETSIZE = 1000;
-	
+public abstract class LSDAbstractTree implements InputFeed.Sink {
 	static interface Node
 	{
 		DirectoryNode getParent();
@@ -44,7 +45,22 @@ public abstract class LSDAbstractTree {
 	
 	static public interface LSDAbstractTreeFactory
 	{
-		public abstract LSDAbstractTree get(final ScoringFunction scoringFunction, final InputData firstElement);
+		public abstract LSDAbstractTree get(final LevelStore store, final InputData firstElement);
+		
+		/**
+		 * Bulk-loads a tree of rows that have already been appended to the store.
+		 */
+		public abstract LSDAbstractTree load(final LevelStore store, final int[] rows, final int processes);
+	}
+	
+	/**
+	 * Scores the whole input into a new store and bulk-loads a tree of it.
+	 * @param processes number of threads scoring the input and building subtrees
+	 */
+	public static LSDAbstractTree load(final LSDAbstractTreeFactory factory, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction, final int processes) throws InterruptedException
+	{
+		final LevelStore store = new LevelStore(scoringFunction);
+		return factory.load(store, InputFeed.of(inputIterator).load(store, processes), processes);
 	}
 	static class DirectoryNode implements Node
 	{
@@ -68,7 +84,7 @@ public abstract class LSDAbstractTree {
 	}
 	class BucketNode implements Node
 	{
-		final InputData[] data = new InputData[BUCKETSIZE];
+		final int[] data = new int[store.bucketCapacity];
 		int reserved = 0;
 		final int axis;
 		DirectoryNode parent = null;
@@ -77,9 +93,13 @@ public abstract class LSDAbstractTree {
 		{
 			this.axis = axis;
 		}
-		void add(InputData el)
+		void add(int row)
+		{
+			data[reserved++] = row;
+		}
+		void remove(final int index)
 		{
-			data[reserved++] = el;
+			data[index] = data[--reserved];
 		}
 		boolean isFull()
 		{
@@ -87,38 +107,240 @@ public abstract class LSDAbstractTree {
 		}
 		int splitPoint()
 		{
-			Arrays.sort(data, 0, reserved, new AxisProjectionComparator(axis));
+			store.sortByLevel(data, 0, reserved, axis);
 			return data.length/2; //[data.length/2].getLevel(axis);
 		}
-		public InputData[] computeLocalSkyline()
+		/**
+		 * Removes the dominated rows of this bucket. 
+		 * The rows are presorted by overall level, so a row can only be dominated by a survivor. 
+		 * A row whose levels all exceed the least maximal level of the survivors is dominated without any test.
+		 * @return the skyline of this bucket, sorted by overall level
+		 */
+		public int[] computeLocalSkyline()
 		{
+			store.sortByOverallLevel(data, 0, reserved);
+			if(store.blockDominance)
+			{
+				final LevelWindow window = new LevelWindow(store, reserved);
+				for(int i = 0; i < reserved; ++i)
+					if(window.survives(data[i])) window.add(data[i]);
+				final int[] skyline = window.toRows();
+				System.arraycopy(skyline, 0, data, 0, skyline.length);
+				reserved = skyline.length;
+				return skyline;
+			}
+			// the survivors stay in sorted order at the front of data, and are tested in the order of the window
+			final int[] window = new int[reserved];
+			int survivors = 0;
+			int stop = Integer.MAX_VALUE;
 			for(int i = 0; i < reserved; ++i)
 			{
-				outerLoop:
-				for(int j = i+1; j < reserved; ++j)
-				{
-					innerLoop:
-					
-					//if(data[j] == null) continue;
-					switch(scoringFunction.evaluate(data[i]).compare(scoringFunction.evaluate(data[j]))) {
-					case FeatureVector.LESS: 
-						data[i--] = data[--reserved];
-						break outerLoop;
-					case FeatureVector.GREATER: 
-						data[j--] = data[--reserved];
-						break innerLoop;
-					}
-				}
+				final int row = data[i];
+				if(store.getMinLevel(row) > stop || isDominated(row, window, survivors)) continue;
+				window[survivors] = row;
+				data[survivors++] = row;
+				stop = Math.min(stop, store.getMaxLevel(row));
 			}
+			reserved = survivors;
 			return Arrays.copyOf(data, reserved);
 		}
 		
+		/**
+		 * Tests the row against the window of survivors, which organizes itself: 
+		 * a survivor that dominates a row is moved to the front, as it is likely to dominate the following rows as well.
+		 */
+		private boolean isDominated(final int row, final int[] window, final int size)
+		{
+			for(int k = 0; k < size; ++k)
+			{
+				final int survivor = window[k];
+				if(store.compare(survivor, row) != FeatureVector.GREATER) continue;
+				System.arraycopy(window, 0, window, 1, k);
+				window[0] = survivor;
+				return true;
+			}
+			return false;
+		}
+		
 		@Override
 		public DirectoryNode getParent() {
 			return parent;
 		}
 	}
 	
+	/**
+	 * Bulk-loads the rows, which have been appended to the store before, top-down into a balanced tree:
+	 * each directory node splits its rows at the median of its split axis, like a split of a full bucket does,
+	 * until the rows fit into a bucket. Subtrees are built in parallel if processes is greater than one.
+	 * The tree can be extended by {@link #add(InputData)} afterwards.
+	 */
+	protected LSDAbstractTree(final LevelStore store, final int[] rows, final int processes)
+	{
+		this.store = store;
+		this.scoringFunction = store.scoringFunction;
+		this.dimensions = store.dimensions;
+		this.appender = store.appender();
+		firstRow = rows.length > 0 ? rows[0] : -1;
+		final Tuples tuples = new Tuples(rows.clone(), new int[rows.length*dimensions]);
+		tuples.other = new Tuples(new int[rows.length], new int[rows.length*dimensions]);
+		tuples.other.other = tuples;
+		// the levels are copied next to the rows, so that partitioning runs over consecutive memory
+		for(int i = 0; i < rows.length; ++i) 
+			System.arraycopy(store.levelsOf(rows[i]), store.offsetOf(rows[i]), tuples.levels, i*dimensions, dimensions);
+		if(processes > 1 && rows.length >= FORK_THRESHOLD)
+		{
+			final ForkJoinPool pool = new ForkJoinPool(processes);
+			try
+			{
+				root = pool.invoke(new Loader(tuples, 0, rows.length, 0, null));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else root = load(tuples, 0, rows.length, 0, null);
+	}
+	
+	/**
+	 * Rows of a subtree that is worth a task of its own.
+	 */
+	static final int FORK_THRESHOLD = 1 << 16;
+	
+	/**
+	 * Rows and their levels while bulk-loading, with a second buffer of the same size for out-of-place partitioning.
+	 */
+	private static final class Tuples
+	{
+		final int[] rows;
+		final int[] levels;
+		Tuples other;
+		
+		Tuples(final int[] rows, final int[] levels)
+		{
+			this.rows = rows;
+			this.levels = levels;
+		}
+	}
+	
+	private Node load(final Tuples tuples, final int from, final int to, final int depth, final DirectoryNode parent)
+	{
+		if(to - from < store.bucketCapacity) return bucket(tuples.rows, from, to, depth, parent);
+		final int middle = (from + to) >>> 1;
+		final int location = split(tuples, from, to, middle, getSplitAxis(depth));
+		final Tuples next = location < 0 ? tuples : tuples.other;
+		final DirectoryNode dn = new DirectoryNode(location < 0 ? ~location : location, null, null, parent);
+		dn.left = load(next, from, middle, depth+1, dn);
+		dn.right = load(next, middle, to, depth+1, dn);
+		return dn;
+	}
+	
+	/**
+	 * Partitions the rows at their median level of the axis, 
+	 * so that no row of the left half has a greater and no row of the right half a smaller level than the median.
+	 * If there are fewer levels than rows, the median is counted and the rows are distributed in a single pass into the other buffer,
+	 * otherwise they are partitioned in place by quickselect.
+	 * @return the median, or its complement if the rows stayed in place
+	 */
+	private int split(final Tuples tuples, final int from, final int to, final int middle, final int axis)
+	{
+		final int d = dimensions;
+		final int[] rows = tuples.rows;
+		final int[] levels = tuples.levels;
+		final int maximum = store.getMaximum(axis);
+		if(maximum < to - from)
+		{
+			final int[] counts = new int[maximum+1];
+			for(int i = from; i < to; ++i) ++counts[levels[i*d+axis]];
+			int median = 0;
+			int less = from;
+			while(less + counts[median] <= middle) less += counts[median++];
+			
+			final int[] targetRows = tuples.other.rows;
+			final int[] targetLevels = tuples.other.levels;
+			int lt = from, eq = less, gt = less + counts[median];
+			for(int i = from; i < to; ++i)
+			{
+				final int level = levels[i*d+axis];
+				final int target = level < median ? lt++ : (level == median ? eq++ : gt++);
+				targetRows[target] = rows[i];
+				for(int k = 0, a = i*d, b = target*d; k < d; ++k) targetLevels[b+k] = levels[a+k];
+			}
+			return median;
+		}
+		int lo = from;
+		int hi = to-1;
+		while(lo < hi)
+		{
+			final int a = levels[lo*d+axis], b = levels[((lo+hi) >>> 1)*d+axis], c = levels[hi*d+axis];
+			final int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+			int i = lo;
+			int j = hi;
+			while(i <= j)
+			{
+				while(levels[i*d+axis] < pivot) ++i;
+				while(levels[j*d+axis] > pivot) --j;
+				if(i <= j) swap(rows, levels, i++, j--);
+			}
+			if(middle <= j) hi = j;
+			else if(middle >= i) lo = i;
+			else break;
+		}
+		return ~levels[middle*d+axis];
+	}
+	
+	private void swap(final int[] rows, final int[] levels, final int i, final int j)
+	{
+		final int row = rows[i];
+		rows[i] = rows[j];
+		rows[j] = row;
+		for(int k = 0, a = i*dimensions, b = j*dimensions; k < dimensions; ++k, ++a, ++b)
+		{
+			final int level = levels[a];
+			levels[a] = levels[b];
+			levels[b] = level;
+		}
+	}
+	
+	private BucketNode bucket(final int[] rows, final int from, final int to, final int depth, final DirectoryNode parent)
+	{
+		final BucketNode bn = new BucketNode(getSplitAxis(depth));
+		bn.parent = parent;
+		for(int i = from; i < to; ++i) bn.add(rows[i]);
+		return bn;
+	}
+	
+	private final class Loader extends RecursiveTask<Node>
+	{
+		private static final long serialVersionUID = -6467237816129066262L;
+		private final Tuples tuples;
+		private final int from, to, depth;
+		private final DirectoryNode parent;
+		
+		Loader(final Tuples tuples, final int from, final int to, final int depth, final DirectoryNode parent)
+		{
+			this.tuples = tuples;
+			this.from = from;
+			this.to = to;
+			this.depth = depth;
+			this.parent = parent;
+		}
+		
+		@Override
+		protected Node compute() {
+			if(to - from < FORK_THRESHOLD) return load(tuples, from, to, depth, parent);
+			final int middle = (from + to) >>> 1;
+			final int location = split(tuples, from, to, middle, getSplitAxis(depth));
+			final Tuples next = location < 0 ? tuples : tuples.other;
+			final DirectoryNode dn = new DirectoryNode(location < 0 ? ~location : location, null, null, parent);
+			final Loader left = new Loader(next, from, middle, depth+1, dn);
+			left.fork();
+			dn.right = new Loader(next, middle, to, depth+1, dn).compute();
+			dn.left = left.join();
+			return dn;
+		}
+	}
+	
 	Node getRoot()
 	{
 		return root;
@@ -127,46 +349,165 @@ public abstract class LSDAbstractTree {
 	protected Node root;
 	public final int dimensions;
 	public final ScoringFunction scoringFunction;
-	public LSDAbstractTree(final ScoringFunction scoringFunction, final InputData firstElement)
+	public final LevelStore store;
+	final LevelStore.Appender appender;
+	final int firstRow;
+	public LSDAbstractTree(final LevelStore store, final InputData firstElement)
 	{
-		this.scoringFunction = scoringFunction;
-		this.dimensions = scoringFunction.getDimensionality();
+		this.store = store;
+		this.scoringFunction = store.scoringFunction;
+		this.dimensions = store.dimensions;
+		this.appender = store.appender();
 		final BucketNode bn = new BucketNode(getSplitAxis(0));
-		bn.add(firstElement);
+		firstRow = appender.add(firstElement);
+		bn.add(firstRow);
 		root = bn;
 	}
 	
 	
-	public int getLevel(final InputData element, int i)
+	public int getLevel(final int row, int i)
 	{
-		//return element.getLevel(i);
-		return (int) scoringFunction.getProjection(i).evaluate(element);
+		return store.getLevel(row, i);
 	}
-	public int getOverallLevel(final InputData element)
+	public int getOverallLevel(final int row)
 	{
-		//return element.getOverallLevel();
-		
-		int level = 0;
-		for(int i = 0; i < dimensions; ++i)
-			level += (int) scoringFunction.getProjection(i).evaluate(element);
-		return level;
-		
+		return store.getOverallLevel(row);
+	}
+	
+	public void add(final InputData element)
+	{
+		offer(appender.stage(element));
+	}
+	
+	/**
+	 * Adds the row of the source without keeping an {@link InputData} object for it.
+	 */
+	public void add(final RowSource source, final long index)
+	{
+		offer(appender.stage(source, index));
+	}
+	
+	/**
+	 * Decides on a staged row; it has to be committed before it can be inserted.
+	 */
+	abstract void offer(final int row);
+	
+	/**
+	 * Inserts a committed row into the bucket it belongs to, splitting the bucket if it is full.
+	 */
+	void insert(final int row)
+	{
+		Node n = root;
+		int depth = 0;
+		while( !(n instanceof BucketNode))
+		{
+			final DirectoryNode nc = (DirectoryNode) n;
+			final int compared = Integer.compare(getLevel(row,getSplitAxis(depth++)), nc.location);
+			n = compared > 0 ? nc.right : nc.left;
+		}
+		final BucketNode bn = (BucketNode) n;
+		if(bn.isFull())
+		{
+			bn.add(row);
+			final int location = bn.splitPoint();
+			final BucketNode lesser = new BucketNode(getSplitAxis(depth+1));
+			final BucketNode higher = new BucketNode(getSplitAxis(depth+1));
+			for(int i = 0; i < location; ++i) lesser.add(bn.data[i]);
+			for(int i = location; i < bn.data.length; ++i) higher.add(bn.data[i]);
+			final DirectoryNode dn = lesser.parent = higher.parent = new DirectoryNode(getLevel(bn.data[location], getSplitAxis(depth)), lesser, higher, bn.parent);
+			if(bn.parent == null) root = dn;
+			else
+			{
+				if(bn.parent.left == bn) bn.parent.left = dn;
+				else bn.parent.right = dn;
+			}
+		}
+		else
+			bn.add(row);
+	}
+	
+	/**
+	 * Removes a committed row, e.g. when it expires.
+	 * Rows with a level equal to the location of a directory node may be on either side of it.
+	 * @return false if the row is not in the tree
+	 */
+	boolean remove(final int row)
+	{
+		return remove(root, 0, row);
 	}
 	
-	public abstract void add(final InputData element);
+	private boolean remove(final Node n, final int depth, final int row)
+	{
+		if(n instanceof BucketNode)
+		{
+			final BucketNode bn = (BucketNode) n;
+			for(int i = 0; i < bn.reserved; ++i)
+			{
+				if(bn.data[i] != row) continue;
+				bn.remove(i);
+				return true;
+			}
+			return false;
+		}
+		final DirectoryNode dn = (DirectoryNode) n;
+		final int level = getLevel(row, getSplitAxis(depth));
+		if(level <= dn.location && remove(dn.left, depth+1, row)) return true;
+		return level >= dn.location && remove(dn.right, depth+1, row);
+	}
 	
+	/**
+	 * Tests the row against the rows of the tree that can dominate it:
+	 * rows right of a directory node have levels of at least its location, so they can only dominate the row if the location does not exceed the row's level.
+	 */
+	boolean isDominated(final int row)
+	{
+		return isDominated(root, 0, row);
+	}
+	
+	private boolean isDominated(final Node n, final int depth, final int row)
+	{
+		if(n instanceof BucketNode)
+		{
+			final BucketNode bn = (BucketNode) n;
+			for(int i = 0; i < bn.reserved; ++i) 
+				if(store.compare(bn.data[i], row) == FeatureVector.GREATER) return true;
+			return false;
+		}
+		final DirectoryNode dn = (DirectoryNode) n;
+		if(isDominated(dn.left, depth+1, row)) return true;
+		return dn.location <= getLevel(row, getSplitAxis(depth)) && isDominated(dn.right, depth+1, row);
+	}
+	
+	/**
+	 * Removes the rows of the tree the row dominates:
+	 * rows left of a directory node have levels of at most its location, so the row can only dominate them if its level does not exceed the location.
+	 * @param removed receives the removed rows
+	 */
+	void removeDominated(final int row, final List<Integer> removed)
+	{
+		removeDominated(root, 0, row, removed);
+	}
+	
+	private void removeDominated(final Node n, final int depth, final int row, final List<Integer> removed)
+	{
+		if(n instanceof BucketNode)
+		{
+			final BucketNode bn = (BucketNode) n;
+			for(int i = 0; i < bn.reserved; ++i)
+			{
+				if(store.compare(row, bn.data[i]) != FeatureVector.GREATER) continue;
+				removed.add(bn.data[i]);
+				bn.remove(i--);
+			}
+			return;
+		}
+		final DirectoryNode dn = (DirectoryNode) n;
+		if(getLevel(row, getSplitAxis(depth)) <= dn.location) removeDominated(dn.left, depth+1, row, removed);
+		removeDominated(dn.right, depth+1, row, removed);
+	}
 	
 	int getSplitAxis(final int depth)
 	{
 		return depth % dimensions;
 	}
-	private final class AxisProjectionComparator implements Comparator<InputData> {
-		final int axis;
-		AxisProjectionComparator(int axis) { this.axis = axis; }
-		
-		 @Override
-		 public int compare(final InputData a, final InputData b) { 
-			 return Integer.compare(getLevel(a,axis), getLevel(b,axis));
-		 }
-	};
 }
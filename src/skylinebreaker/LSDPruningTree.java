@@ -27,9 +27,9 @@
 
 package skylinebreaker;
 
-import compat.FeatureVector;
+import java.util.Arrays;
+
 import compat.InputData;
-import compat.ScoringFunction;
 
 
 public class LSDPruningTree extends LSDAbstractTree {
@@ -37,89 +37,61 @@ public class LSDPruningTree extends LSDAbstractTree {
 	public final static class LSDPruningTreeFactory implements LSDAbstractTreeFactory
 	{
 		@Override
-		public LSDAbstractTree get(final ScoringFunction scoringFunction, final InputData firstElement) {
-			return new LSDPruningTree(scoringFunction, firstElement);
+		public LSDAbstractTree get(final LevelStore store, final InputData firstElement) {
+			return new LSDPruningTree(store, firstElement);
 		}	
+		@Override
+		public LSDAbstractTree load(final LevelStore store, final int[] rows, final int processes) {
+			return new LSDPruningTree(store, rows, processes);
+		}
 	}
 	
 	
-	public LSDPruningTree(final ScoringFunction scoringFunction, final InputData firstElement)
+	public LSDPruningTree(final LevelStore store, final InputData firstElement)
 	{
-		super(scoringFunction, firstElement);
-		pruningLevel = scoringFunction.evaluate(firstElement).getPruningLevel();
-		//computeOverallLevel(firstElement); // needed to index this element with the levels mapping
+		super(store, firstElement);
+		pruningLevel = store.getPruningLevel(firstRow);
 	}
 	
-	private double pruningLevel;
-	@Override
-	public void add(final InputData element)
+	/**
+	 * Bulk-loads the rows; as all rows are known, they are pruned with the least pruning level of all of them.
+	 */
+	public LSDPruningTree(final LevelStore store, final int[] rows, final int processes)
 	{
-		final FeatureVector element_level = scoringFunction.evaluate(element);
-		final double element_overalllevel = element_level.overallLevel; //computeOverallLevel(element); TODO
-		if(pruningLevel < element_overalllevel) return;
-		final double element_pruningLevel = element_level.getPruningLevel();
-		if(element_pruningLevel < pruningLevel) pruningLevel = element_pruningLevel;
-		
-		Node n = root;
-		int depth = 0;
-		while( !(n instanceof BucketNode))
-		{
-			final DirectoryNode nc = (DirectoryNode) n;
-			final int compared = Integer.compare(getLevel(element,getSplitAxis(depth++)), nc.location);
-			n = compared > 0 ? nc.right : nc.left;
-		}
-		final BucketNode bn = (BucketNode) n;
-		if(bn.isFull())
-		{
-			bn.add(element);
-			final int location = bn.splitPoint();
-			final BucketNode lesser = new BucketNode(getSplitAxis(depth+1));
-			final BucketNode higher = new BucketNode(getSplitAxis(depth+1));
-			for(int i = 0; i < location; ++i) lesser.add(bn.data[i]);
-			for(int i = location; i < bn.data.length; ++i) higher.add(bn.data[i]);
-			final DirectoryNode dn = lesser.parent = higher.parent = new DirectoryNode(scoringFunction.evaluate(bn.data[location]).getLevel(getSplitAxis(depth)), lesser, higher, bn.parent);
-			if(bn.parent == null) root = dn;
-			else
-			{
-				if(bn.parent.left == bn) bn.parent.left = dn;
-				else bn.parent.right = dn;
-			}
-		}
-		else
-			bn.add(element);
+		this(store, rows, leastPruningLevel(store, rows), processes);
 	}
-	/*
-	public int computeOverallLevel(final FlatLevelCombination element)
+	
+	private LSDPruningTree(final LevelStore store, final int[] rows, final double pruningLevel, final int processes)
 	{
-		Integer[] l = new Integer[dimensions];
-		int level = 0;
-		for(int i = 0; i < dimensions; ++i)
-		{
-			l[i] = (int) scoringFunction.getBasePref(i).level(scoringFunction.getAttributeSelector(i).evaluate(element, null, scoringFunction.getBasePref(i).getDomainType()), null);
-			level += l[i];
-		}
-		levels.put(element.getIdentifier(), l);
-		return level;
+		super(store, prune(store, rows, pruningLevel), processes);
+		this.pruningLevel = pruningLevel;
 	}
 	
+	private static double leastPruningLevel(final LevelStore store, final int[] rows)
+	{
+		double least = Double.MAX_VALUE;
+		for(final int row : rows) least = Math.min(least, store.getPruningLevel(row));
+		return least;
+	}
 	
-	final private HashMap<Integer,Integer[]> levels = new HashMap<Integer,Integer[]>();
-	
-	@Override
-	public int getLevel(final FlatLevelCombination element, int i)
+	private static int[] prune(final LevelStore store, final int[] rows, final double pruningLevel)
 	{
-		return levels.get(element.getIdentifier())[i];
+		int reserved = 0;
+		final int[] pruned = new int[rows.length];
+		for(final int row : rows) if(store.getOverallLevel(row) <= pruningLevel) pruned[reserved++] = row;
+		return Arrays.copyOf(pruned, reserved);
 	}
 	
+	double pruningLevel;
 	@Override
-	public int getOverallLevel(final FlatLevelCombination element)
+	void offer(final int row)
 	{
-		int level = 0;
-		for(int i = 0; i < dimensions; ++i)
-			level += getLevel(element,i);
-		return level;
+		final double element_overalllevel = store.getOverallLevel(row);
+		if(pruningLevel < element_overalllevel) return;
+		final double element_pruningLevel = store.getPruningLevel(row);
+		if(element_pruningLevel < pruningLevel) pruningLevel = element_pruningLevel;
 		
+		insert(appender.commit());
 	}
-	*/
 	
 }
@@ -27,9 +27,9 @@
 
 package skylinebreaker;
 
-import compat.FeatureVector;
+import java.util.concurrent.atomic.AtomicLong;
+
 import compat.InputData;
-import compat.ScoringFunction;
 
 
 
@@ -42,65 +42,56 @@ public final class LSDSharedPruningTree extends LSDPruningTree {
 			LSDSharedPruningTree.resetPruningLevel();
 		}
 		@Override
-		public LSDAbstractTree get(final ScoringFunction scoringFunction, final InputData firstElement) {
-			return new LSDSharedPruningTree(scoringFunction, firstElement);
+		public LSDAbstractTree get(final LevelStore store, final InputData firstElement) {
+			return new LSDSharedPruningTree(store, firstElement);
 		}	
+		@Override
+		public LSDAbstractTree load(final LevelStore store, final int[] rows, final int processes) {
+			return new LSDSharedPruningTree(store, rows, processes);
+		}
 	}
 	
 	
-	public LSDSharedPruningTree(final ScoringFunction scoringFunction, final InputData firstElement) 
+	public LSDSharedPruningTree(final LevelStore store, final InputData firstElement) 
 	{
-		super(scoringFunction, firstElement);
-		final double element_pruningLevel = scoringFunction.evaluate(firstElement).getPruningLevel();
-		synchronized(globalPruningLevel)
-		{
-			if(element_pruningLevel < globalPruningLevel) globalPruningLevel = element_pruningLevel;
-		}
+		super(store, firstElement);
+		lowerPruningLevel(store.getPruningLevel(firstRow));
 	}
 	
-	private static void resetPruningLevel() { globalPruningLevel = Double.MAX_VALUE; }
+	public LSDSharedPruningTree(final LevelStore store, final int[] rows, final int processes) 
+	{
+		super(store, rows, processes);
+		lowerPruningLevel(pruningLevel);
+	}
 	
-	private static Double globalPruningLevel = Double.MAX_VALUE;
-	@Override
-	public void add(final InputData element)
+	private static void resetPruningLevel() { globalPruningLevel.set(Double.doubleToLongBits(Double.MAX_VALUE)); }
+	
+	/**
+	 * Bits of the least pruning level of all trees. Inserts read it without locking; 
+	 * it is only written when a row lowers it, by a compare-and-set loop.
+	 */
+	private static final AtomicLong globalPruningLevel = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+	
+	private static void lowerPruningLevel(final double level)
 	{
-		final FeatureVector element_level = scoringFunction.evaluate(element);
-		final double element_overalllevel = element_level.overallLevel; // computeOverallLevel(element); TODO
-		synchronized(globalPruningLevel)
+		final long bits = Double.doubleToLongBits(level);
+		long current = globalPruningLevel.get();
+		while(level < Double.longBitsToDouble(current))
 		{
-			if(globalPruningLevel < element_overalllevel) return;
-			final double element_pruningLevel = element_level.getPruningLevel();
-			if(element_pruningLevel < globalPruningLevel) globalPruningLevel = element_pruningLevel;	
+			if(globalPruningLevel.compareAndSet(current, bits)) return;
+			current = globalPruningLevel.get();
 		}
+	}
+	
+	@Override
+	void offer(final int row)
+	{
+		final double globalLevel = Double.longBitsToDouble(globalPruningLevel.get());
+		if(globalLevel < store.getOverallLevel(row)) return;
+		final double element_pruningLevel = store.getPruningLevel(row);
+		if(element_pruningLevel < globalLevel) lowerPruningLevel(element_pruningLevel);
 		
-		
-		Node n = root;
-		int depth = 0;
-		while( !(n instanceof BucketNode))
-		{
-			final DirectoryNode nc = (DirectoryNode) n;
-			final int compared = Integer.compare(getLevel(element,getSplitAxis(depth++)), nc.location);
-			n = compared > 0 ? nc.right : nc.left;
-		}
-		final BucketNode bn = (BucketNode) n;
-		if(bn.isFull())
-		{
-			bn.add(element);
-			final int location = bn.splitPoint();
-			final BucketNode lesser = new BucketNode(getSplitAxis(depth+1));
-			final BucketNode higher = new BucketNode(getSplitAxis(depth+1));
-			for(int i = 0; i < location; ++i) lesser.add(bn.data[i]);
-			for(int i = location; i < bn.data.length; ++i) higher.add(bn.data[i]);
-			final DirectoryNode dn = lesser.parent = higher.parent = new DirectoryNode(scoringFunction.evaluate(bn.data[location]).getLevel(getSplitAxis(depth)), lesser, higher, bn.parent);
-			if(bn.parent == null) root = dn;
-			else
-			{
-				if(bn.parent.left == bn) bn.parent.left = dn;
-				else bn.parent.right = dn;
-			}
-		}
-		else
-			bn.add(element);
+		insert(appender.commit());
 	}
 	
 	
@@ -28,7 +28,6 @@
 package skylinebreaker;
 
 import compat.InputData;
-import compat.ScoringFunction;
 
 
 
@@ -38,46 +37,28 @@ public final class LSDSimpleTree extends LSDAbstractTree {
 	public final static class LSDSimpleTreeFactory implements LSDAbstractTreeFactory
 	{
 		@Override
-		public LSDAbstractTree get(final ScoringFunction scoringFunction, final InputData firstElement) {
-			return new LSDSimpleTree(scoringFunction, firstElement);
+		public LSDAbstractTree get(final LevelStore store, final InputData firstElement) {
+			return new LSDSimpleTree(store, firstElement);
 		}	
+		@Override
+		public LSDAbstractTree load(final LevelStore store, final int[] rows, final int processes) {
+			return new LSDSimpleTree(store, rows, processes);
+		}
 	}
 	
 	
-	public LSDSimpleTree(final ScoringFunction scoringFunction, final InputData firstElement)
+	public LSDSimpleTree(final LevelStore store, final InputData firstElement)
+	{
+		super(store, firstElement);
+	}
+	public LSDSimpleTree(final LevelStore store, final int[] rows, final int processes)
 	{
-		super(scoringFunction, firstElement);
+		super(store, rows, processes);
 	}
 	@Override
-	public void add(final InputData element)
+	void offer(final int row)
 	{
-		Node n = root;
-		int depth = 0;
-		while( !(n instanceof BucketNode))
-		{
-			final DirectoryNode nc = (DirectoryNode) n;
-			final int compared = Integer.compare(getLevel(element,getSplitAxis(depth++)), nc.location);
-			n = compared > 0 ? nc.right : nc.left;
-		}
-		final BucketNode bn = (BucketNode) n;
-		if(bn.isFull())
-		{
-			bn.add(element);
-			final int location = bn.splitPoint();
-			final BucketNode lesser = new BucketNode(getSplitAxis(depth+1));
-			final BucketNode higher = new BucketNode(getSplitAxis(depth+1));
-			for(int i = 0; i < location; ++i) lesser.add(bn.data[i]);
-			for(int i = location; i < bn.data.length; ++i) higher.add(bn.data[i]);
-			final DirectoryNode dn = lesser.parent = higher.parent = new DirectoryNode(scoringFunction.evaluate(bn.data[location]).getLevel(getSplitAxis(depth)), lesser, higher, bn.parent);
-			if(bn.parent == null) root = dn;
-			else
-			{
-				if(bn.parent.left == bn) bn.parent.left = dn;
-				else bn.parent.right = dn;
-			}
-		}
-		else
-			bn.add(element);
+		insert(appender.commit());
 	}
 	
 
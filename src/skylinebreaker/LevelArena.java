@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import skylinebreaker.LevelStore.Page;
+
+/**
+ * Recycles the pages of {@link LevelStore}s across queries, so that a big query reuses the arrays of the previous one
+ * instead of allocating (and later collecting) millions of levels again. Engines release their store when the query has finished.
+ * Pages stay on the heap: a page already packs the levels of {@value LevelStore#PAGE_SIZE} rows into a few arrays,
+ * so it is the allocation of these arrays per query, not the number of objects, that costs collections;
+ * direct buffers would instead put a bounds-checked buffer access into every level read of the dominance tests.
+ * Pooled pages are held softly, so the collector can still reclaim an idle pool when memory gets short,
+ * and the pool never holds more than its limit of bytes; {@link #clear()} drops it at once.
+ * The shared arena is used by default unless the system property {@code skylinebreaker.arena} is false;
+ * {@code skylinebreaker.arenaMegabytes} sets its limit, 64 by default.
+ */
+public final class LevelArena {
+	
+	public static final LevelArena SHARED = new LevelArena(Long.getLong("skylinebreaker.arenaMegabytes", 64) << 20);
+	static final LevelArena DEFAULT = "false".equals(System.getProperty("skylinebreaker.arena")) ? null : SHARED;
+	
+	private final long maxBytes;
+	private final Map<Integer, ArrayDeque<SoftReference<Page>>> pools = new HashMap<Integer, ArrayDeque<SoftReference<Page>>>();
+	private long pooledBytes = 0;
+	
+	/**
+	 * @param maxBytes the limit of the approximate heap size of the pooled pages
+	 */
+	public LevelArena(final long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+	
+	synchronized Page take(final int base, final int dimensions)
+	{
+		final ArrayDeque<SoftReference<Page>> pool = pools.get(dimensions);
+		while(pool != null && !pool.isEmpty())
+		{
+			final Page page = pool.poll().get();
+			if(page == null) continue;
+			pooledBytes -= page.bytes();
+			page.base = base;
+			return page;
+		}
+		return new Page(base, dimensions);
+	}
+	
+	synchronized void give(final Page[] pages, final int count)
+	{
+		for(int i = 0; i < count; ++i)
+		{
+			final Page page = pages[i];
+			page.clear();
+			if(pooledBytes + page.bytes() > maxBytes) purge();
+			if(pooledBytes + page.bytes() > maxBytes) break;
+			final int dimensions = page.levels.length / LevelStore.PAGE_SIZE;
+			ArrayDeque<SoftReference<Page>> pool = pools.get(dimensions);
+			if(pool == null) pools.put(dimensions, pool = new ArrayDeque<SoftReference<Page>>());
+			pool.add(new SoftReference<Page>(page));
+			pooledBytes += page.bytes();
+		}
+	}
+	
+	/**
+	 * Recounts the pooled bytes without the pages the collector has reclaimed.
+	 */
+	private void purge()
+	{
+		pooledBytes = 0;
+		for(final ArrayDeque<SoftReference<Page>> pool : pools.values())
+		{
+			for(final Iterator<SoftReference<Page>> it = pool.iterator(); it.hasNext();)
+			{
+				final Page page = it.next().get();
+				if(page == null) it.remove();
+				else pooledBytes += page.bytes();
+			}
+		}
+	}
+	
+	/**
+	 * Drops all pooled pages.
+	 */
+	public synchronized void clear()
+	{
+		pools.clear();
+		pooledBytes = 0;
+	}
+}
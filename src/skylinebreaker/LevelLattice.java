@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import compat.BasicScoring;
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * The finite lattice of all level combinations of a scoring function, one bit per node.
+ * Node indices are mixed-radix numbers of the levels, the first level varying fastest.
+ * Like the trees, the lattice relies on levels between zero and {@link BasicScoring#getMaximum()};
+ * {@link #node(InputData)} rejects other levels, since they would address another node.
+ */
+final class LevelLattice {
+	
+	private final BasicScoring[] scorings;
+	private final int dimensions;
+	/** number of levels per dimension */
+	private final int[] extents;
+	private final int[] strides;
+	final int size;
+	/** nodes holding at least one row */
+	final AtomicLongArray occupied;
+	/** nodes strictly dominated by an occupied node, filled by {@link #propagate()} */
+	final AtomicLongArray dominated;
+	
+	/**
+	 * @return the number of nodes of the lattice, or Long.MAX_VALUE if it exceeds a long
+	 */
+	static long size(final ScoringFunction scoringFunction)
+	{
+		long size = 1;
+		for(final BasicScoring scoring : scoringFunction.scorings)
+		{
+			final long extent = scoring.getMaximum() + 1L;
+			if(size > Long.MAX_VALUE / extent) return Long.MAX_VALUE;
+			size *= extent;
+		}
+		return size;
+	}
+	
+	LevelLattice(final ScoringFunction scoringFunction)
+	{
+		final long size = size(scoringFunction);
+		if(size > Integer.MAX_VALUE) throw new IllegalArgumentException("Lattice too large: " + size + " nodes");
+		this.size = (int) size;
+		this.scorings = scoringFunction.scorings.clone();
+		this.dimensions = scorings.length;
+		this.extents = new int[dimensions];
+		this.strides = new int[dimensions];
+		int stride = 1;
+		for(int i = 0; i < dimensions; ++i)
+		{
+			extents[i] = scorings[i].getMaximum() + 1;
+			strides[i] = stride;
+			stride *= extents[i];
+		}
+		occupied = newBits();
+		dominated = newBits();
+	}
+	
+	AtomicLongArray newBits()
+	{
+		return new AtomicLongArray((int) ((size + 63L) >>> 6));
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if a level of the element exceeds the maximum of its scoring
+	 */
+	int node(final InputData element)
+	{
+		int node = 0;
+		for(int i = 0; i < dimensions; ++i)
+		{
+			final int level = scorings[i].evaluate(element);
+			if(level < 0 || level >= extents[i])
+				throw new IllegalArgumentException("level " + level + " of dimension " + i + " outside of 0.." + (extents[i]-1));
+			node += level * strides[i];
+		}
+		return node;
+	}
+	
+	/**
+	 * May be called concurrently.
+	 */
+	void mark(final int node)
+	{
+		set(occupied, node);
+	}
+	
+	boolean isDominated(final int node)
+	{
+		return get(dominated, node);
+	}
+	
+	private static boolean get(final AtomicLongArray bits, final int node)
+	{
+		return (bits.get(node >>> 6) & (1L << node)) != 0;
+	}
+	
+	/**
+	 * Sets the bit with a CAS, so that concurrent writers of other bits of the same word do not get lost.
+	 * A bit is set at most once, hence the CASes are bounded by the size of the lattice, no matter how many rows mark it.
+	 */
+	private static void set(final AtomicLongArray bits, final int node)
+	{
+		final int word = node >>> 6;
+		final long bit = 1L << node;
+		long value;
+		while(((value = bits.get(word)) & bit) == 0)
+			if(bits.compareAndSet(word, value, value | bit)) return;
+	}
+	
+	int dimensions()
+	{
+		return dimensions;
+	}
+	
+	/**
+	 * @return the distance of two neighbours along dimension i, which is also the number of lines along i per block
+	 */
+	int stride(final int i)
+	{
+		return strides[i];
+	}
+	
+	int extent(final int i)
+	{
+		return extents[i];
+	}
+	
+	/**
+	 * @return the number of blocks of dimension i; a block holds all nodes that only differ in the levels of dimensions 0..i
+	 */
+	int blocks(final int i)
+	{
+		return size / (strides[i] * extents[i]);
+	}
+	
+	/**
+	 * Propagates dominance from the occupied nodes through the lattice, without comparing any rows.
+	 * First the upward closure of the occupied nodes (all nodes weakly dominated by one) is built,
+	 * one dimension after the other, each node taking over the bit of its predecessor along that dimension.
+	 * A node is then strictly dominated iff one of its direct predecessors lies in the closure.
+	 */
+	void propagate()
+	{
+		final AtomicLongArray closure = closure();
+		for(int i = 0; i < dimensions; ++i)
+			propagateAlong(closure, closure, i, 0, blocks(i), 0, stride(i));
+		for(int i = 0; i < dimensions; ++i)
+			propagateAlong(closure, dominated, i, 0, blocks(i), 0, stride(i));
+	}
+	
+	/**
+	 * @return a copy of the occupied bits, to be closed
+	 */
+	AtomicLongArray closure()
+	{
+		final AtomicLongArray closure = newBits();
+		for(int w = 0; w < closure.length(); ++w) closure.lazySet(w, occupied.get(w));
+		return closure;
+	}
+	
+	/**
+	 * Sets the target bit of every node whose predecessor along dimension i has its source bit set,
+	 * for the lines [fromLine, toLine) of the blocks [fromBlock, toBlock) of dimension i.
+	 * The lines along a dimension are independent of each other, so disjoint ranges may be processed concurrently.
+	 * With source and target being the same, bits are passed on along the whole line.
+	 */
+	void propagateAlong(final AtomicLongArray source, final AtomicLongArray target, final int i, final int fromBlock, final int toBlock, final int fromLine, final int toLine)
+	{
+		final int stride = strides[i];
+		final int block = stride * extents[i];
+		for(int b = fromBlock; b < toBlock; ++b)
+		{
+			final int base = b * block;
+			for(int offset = stride; offset < block; offset += stride)
+				for(int node = base + offset + fromLine, end = base + offset + toLine; node < end; ++node)
+					if(get(source, node - stride)) set(target, node);
+		}
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+
+import compat.BasicScoring;
+import compat.FeatureVector;
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Per-query store of the levels of all input elements.
+ * Every element is scored exactly once when it is appended; afterwards it is addressed by its row index.
+ * The levels are packed row-wise into pages of primitive arrays, so that dominance tests neither allocate
+ * nor call the scoring function.
+ * Each thread appends through its own {@link Appender}; a row may be read by any thread that got its index
+ * through a synchronized hand-over.
+ * If {@link #blockDominance} is set, local skylines and merges test candidates tile-wise against a {@link LevelWindow}
+ * instead of pairwise; it defaults to the system property {@code skylinebreaker.blockDominance}.
+ */
+public final class LevelStore {
+	final static int PAGE_SHIFT = 12;
+	final static int PAGE_SIZE = 1 << PAGE_SHIFT;
+	final static int PAGE_MASK = PAGE_SIZE - 1;
+
+	final static class Page
+	{
+		int base;
+		final int[] levels;
+		final int[] overallLevels = new int[PAGE_SIZE];
+		/** the elements of a page filled from elements, allocated with the first one; pages filled from a {@link RowSource} keep sourceRows instead */
+		InputData[] rows = null;
+		RowSource source = null;
+		long[] sourceRows = null;
+		int size = 0;
+		
+		Page(final int base, final int dimensions)
+		{
+			this.base = base;
+			this.levels = new int[PAGE_SIZE*dimensions];
+		}
+		
+		/**
+		 * Empties a released page for reuse, dropping its references to rows; the levels are overwritten when rows are appended.
+		 */
+		void clear()
+		{
+			if(rows != null) Arrays.fill(rows, 0, size, null);
+			source = null;
+			size = 0;
+		}
+		
+		/**
+		 * @return the approximate heap size of the page
+		 */
+		long bytes()
+		{
+			return 4L*levels.length + 4L*PAGE_SIZE + (rows == null ? 0 : 8L*PAGE_SIZE) + (sourceRows == null ? 0 : 8L*PAGE_SIZE);
+		}
+	}
+	
+	public final ScoringFunction scoringFunction;
+	public final int dimensions;
+	public final boolean blockDominance;
+	/**
+	 * Capacity of the buckets of the trees of this store, see {@link BucketCapacity}.
+	 */
+	public final int bucketCapacity;
+	private final BasicScoring[] scorings;
+	private final int[] maxima;
+	private final int kernel;
+	
+	private final LevelArena arena;
+	
+	private volatile Page[] pages = new Page[16];
+	private int pageCount = 0;
+	
+	public LevelStore(final ScoringFunction scoringFunction)
+	{
+		this(scoringFunction, Boolean.getBoolean("skylinebreaker.blockDominance"));
+	}
+	
+	public LevelStore(final ScoringFunction scoringFunction, final boolean blockDominance)
+	{
+		this(scoringFunction, blockDominance, LevelArena.DEFAULT);
+	}
+	
+	/**
+	 * @param arena to take the pages from and to return them to on {@link #release()}, or null to allocate them
+	 */
+	public LevelStore(final ScoringFunction scoringFunction, final boolean blockDominance, final LevelArena arena)
+	{
+		this(scoringFunction, blockDominance, arena, BucketCapacity.get(scoringFunction.getDimensionality()));
+	}
+	
+	/**
+	 * @param bucketCapacity between {@value BucketCapacity#MIN} and {@value BucketCapacity#MAX}
+	 */
+	public LevelStore(final ScoringFunction scoringFunction, final boolean blockDominance, final LevelArena arena, final int bucketCapacity)
+	{
+		if(bucketCapacity < BucketCapacity.MIN || bucketCapacity > BucketCapacity.MAX)
+			throw new IllegalArgumentException("bucket capacity must be between " + BucketCapacity.MIN + " and " + BucketCapacity.MAX + ": " + bucketCapacity);
+		this.arena = arena;
+		this.bucketCapacity = bucketCapacity;
+		this.scoringFunction = scoringFunction;
+		this.blockDominance = blockDominance;
+		this.dimensions = scoringFunction.getDimensionality();
+		this.scorings = scoringFunction.scorings.clone();
+		this.maxima = new int[dimensions];
+		for(int i = 0; i < dimensions; ++i) maxima[i] = scorings[i].getMaximum();
+		this.kernel = DominanceKernel.forDimensionality(dimensions);
+	}
+	
+	private synchronized Page newPage()
+	{
+		Page[] p = pages;
+		if(pageCount == p.length) p = Arrays.copyOf(p, p.length*2);
+		final int base = pageCount << PAGE_SHIFT;
+		final Page page = arena == null ? new Page(base, dimensions) : arena.take(base, dimensions);
+		p[pageCount++] = page;
+		pages = p;
+		return page;
+	}
+	
+	/**
+	 * Ends the query: the pages go back to the arena, if any, and the store must not be used any more.
+	 * Rows materialized before, e.g. by {@link #getRows(int[])}, stay valid.
+	 */
+	public synchronized void release()
+	{
+		final Page[] p = pages;
+		final int count = pageCount;
+		pages = new Page[0];
+		pageCount = 0;
+		if(arena != null) arena.give(p, count);
+	}
+	
+	public Appender appender()
+	{
+		return new Appender();
+	}
+	
+	/**
+	 * Appends rows to the store. An appender must only be used by a single thread.
+	 */
+	public final class Appender
+	{
+		private Page page = null;
+		private int[] buffer = null;
+		private InputData flyweight = null;
+		
+		/**
+		 * Scores the element into the next free row without committing it.
+		 * A following call of stage overwrites this row unless {@link #commit()} was called in between.
+		 * @return the index the row will get when it is committed
+		 */
+		public int stage(final InputData element)
+		{
+			if(page == null || page.size == PAGE_SIZE || page.source != null)
+			{
+				page = newPage();
+				if(page.rows == null) page.rows = new InputData[PAGE_SIZE];
+			}
+			final int row = score(element);
+			page.rows[row & PAGE_MASK] = element;
+			return row;
+		}
+		
+		/**
+		 * Like {@link #stage(InputData)}, but reads the row from the source into a reused element.
+		 * The store only remembers the index of the row in the source.
+		 */
+		public int stage(final RowSource source, final long index)
+		{
+			if(page == null || page.size == PAGE_SIZE || page.source != source)
+			{
+				page = newPage();
+				page.source = source;
+				if(page.sourceRows == null) page.sourceRows = new long[PAGE_SIZE];
+			}
+			if(buffer == null || buffer.length != source.getAttributes())
+			{
+				buffer = new int[source.getAttributes()];
+				flyweight = new InputData(buffer);
+			}
+			source.read(index, buffer);
+			final int row = score(flyweight);
+			page.sourceRows[row & PAGE_MASK] = index;
+			return row;
+		}
+		
+		private int score(final InputData element)
+		{
+			final int offset = page.size;
+			final int[] levels = page.levels;
+			final int lo = offset*dimensions;
+			int overall = 0;
+			for(int i = 0; i < dimensions; ++i)
+			{
+				final int level = scorings[i].evaluate(element);
+				levels[lo+i] = level;
+				overall += level;
+			}
+			page.overallLevels[offset] = overall;
+			return page.base + offset;
+		}
+		
+		/**
+		 * Commits the last staged row.
+		 * @return the index of the committed row
+		 */
+		public int commit()
+		{
+			return page.base + page.size++;
+		}
+		
+		public int add(final InputData element)
+		{
+			stage(element);
+			return commit();
+		}
+	}
+
+	int[] levelsOf(final int row)
+	{
+		return pages[row >>> PAGE_SHIFT].levels;
+	}
+	int offsetOf(final int row)
+	{
+		return (row & PAGE_MASK)*dimensions;
+	}
+	
+	public int getLevel(final int row, final int i)
+	{
+		return pages[row >>> PAGE_SHIFT].levels[(row & PAGE_MASK)*dimensions + i];
+	}
+	
+	int getMaximum(final int i)
+	{
+		return maxima[i];
+	}
+	
+	public int getOverallLevel(final int row)
+	{
+		return pages[row >>> PAGE_SHIFT].overallLevels[row & PAGE_MASK];
+	}
+	
+	public InputData getRow(final int row)
+	{
+		final Page page = pages[row >>> PAGE_SHIFT];
+		final int offset = row & PAGE_MASK;
+		return page.source == null ? page.rows[offset] : page.source.get(page.sourceRows[offset]);
+	}
+	
+	public InputData[] getRows(final int[] rows)
+	{
+		final InputData[] data = new InputData[rows.length];
+		for(int i = 0; i < rows.length; ++i) data[i] = getRow(rows[i]);
+		return data;
+	}
+	
+	/**
+	 * Compares two rows like {@link FeatureVector#compare(FeatureVector)}:
+	 * GREATER means that row a dominates row b, LESS that row b dominates row a.
+	 */
+	public int compare(final int a, final int b)
+	{
+		return DominanceKernel.compare(kernel, dimensions, levelsOf(a), offsetOf(a), levelsOf(b), offsetOf(b));
+	}
+	
+	/**
+	 * @see FeatureVector#getPruningLevel()
+	 */
+	public double getPruningLevel(final int row)
+	{
+		final int[] v = levelsOf(row);
+		final int o = offsetOf(row);
+		if(dimensions == 1) return v[o]+1; // ScoringFunction is a preorder
+		final int overallLevel = getOverallLevel(row);
+		if(overallLevel == 0) return 1;
+		
+		final int combinedDimensionLength = scoringFunction.combinedDimensionLength;
+		if(overallLevel == combinedDimensionLength) return combinedDimensionLength+1;
+		
+		int min = Integer.MAX_VALUE;
+		for(int i = 0; i < dimensions; ++i)
+		{
+			if(v[o+i] == 0) continue;
+			final int difference = maxima[i] - v[o+i];
+			if(difference < min) min = difference;
+		}
+		return combinedDimensionLength - min;
+	}
+	
+	/**
+	 * Sorts the rows by their overall level, the order in which local skylines are kept.
+	 * A row can only be dominated by rows with a smaller overall level.
+	 */
+	void sortByOverallLevel(final int[] rows, final int from, final int to)
+	{
+		final long[] keys = new long[to-from];
+		for(int i = from; i < to; ++i) keys[i-from] = ((long) getOverallLevel(rows[i]) << 32) | rows[i];
+		Arrays.sort(keys);
+		for(int i = from; i < to; ++i) rows[i] = (int) keys[i-from];
+	}
+	
+	int getMinLevel(final int row)
+	{
+		final int[] v = levelsOf(row);
+		final int o = offsetOf(row);
+		int min = v[o];
+		for(int i = 1; i < dimensions; ++i) if(v[o+i] < min) min = v[o+i];
+		return min;
+	}
+	
+	int getMaxLevel(final int row)
+	{
+		final int[] v = levelsOf(row);
+		final int o = offsetOf(row);
+		int max = v[o];
+		for(int i = 1; i < dimensions; ++i) if(v[o+i] > max) max = v[o+i];
+		return max;
+	}
+	
+	/**
+	 * Sorts the rows by their level of the given axis.
+	 */
+	void sortByLevel(final int[] rows, final int from, final int to, final int axis)
+	{
+		final long[] keys = new long[to-from];
+		for(int i = from; i < to; ++i) keys[i-from] = ((long) getLevel(rows[i], axis) << 32) | rows[i];
+		Arrays.sort(keys);
+		for(int i = from; i < to; ++i) rows[i] = (int) keys[i-from];
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+
+/**
+ * Window of mutually undominated rows for block-wise dominance tests.
+ * The levels are kept column-major, so that a candidate is tested against a tile of {@value #TILE} rows at once
+ * with branch-free loops over consecutive ints, which the JIT compiles to SIMD instructions.
+ * Like {@link DominanceKernel}, the tests rely on non-negative levels.
+ */
+final class LevelWindow {
+	static final int TILE = 16;
+	
+	private final LevelStore store;
+	private final int dimensions;
+	private int[][] columns;
+	private int[] rows;
+	private int[] eliminated;
+	private int size = 0;
+	
+	private final int[] candidate;
+	private final int[] better = new int[TILE];
+	private final int[] worse = new int[TILE];
+	
+	LevelWindow(final LevelStore store, final int capacity)
+	{
+		this.store = store;
+		this.dimensions = store.dimensions;
+		final int tiles = Math.max(1, (capacity + TILE - 1) / TILE);
+		this.columns = new int[dimensions][tiles*TILE];
+		this.rows = new int[tiles*TILE];
+		this.eliminated = new int[tiles];
+		this.candidate = new int[dimensions];
+	}
+	
+	int size()
+	{
+		return size;
+	}
+	
+	void add(final int row)
+	{
+		if(size == rows.length)
+		{
+			final int capacity = rows.length*2;
+			for(int k = 0; k < dimensions; ++k) columns[k] = Arrays.copyOf(columns[k], capacity);
+			rows = Arrays.copyOf(rows, capacity);
+			eliminated = Arrays.copyOf(eliminated, capacity/TILE);
+		}
+		final int[] levels = store.levelsOf(row);
+		final int offset = store.offsetOf(row);
+		for(int k = 0; k < dimensions; ++k) columns[k][size] = levels[offset+k];
+		rows[size++] = row;
+	}
+	
+	/**
+	 * Tests the row against the whole window. 
+	 * If no window row dominates it, all window rows it dominates are removed.
+	 * @return false if the row is dominated by a window row
+	 */
+	boolean survives(final int row)
+	{
+		final int[] levels = store.levelsOf(row);
+		final int offset = store.offsetOf(row);
+		for(int k = 0; k < dimensions; ++k) candidate[k] = levels[offset+k];
+		
+		boolean anyEliminated = false;
+		for(int tile = 0, base = 0; base < size; ++tile, base += TILE)
+		{
+			final int lanes = Math.min(TILE, size - base);
+			Arrays.fill(better, 0);
+			Arrays.fill(worse, 0);
+			for(int k = 0; k < dimensions; ++k)
+			{
+				final int c = candidate[k];
+				final int[] column = columns[k];
+				for(int j = 0; j < lanes; ++j)
+				{
+					final int v = column[base+j];
+					better[j] |= v - c;
+					worse[j] |= c - v;
+				}
+			}
+			int mask = 0;
+			for(int j = 0; j < lanes; ++j)
+			{
+				final int b = better[j] >>> 31;
+				final int w = worse[j] >>> 31;
+				if((b & ~w) != 0) return false;
+				mask |= (w & ~b) << j;
+			}
+			eliminated[tile] = mask;
+			anyEliminated |= mask != 0;
+		}
+		if(anyEliminated) compact();
+		return true;
+	}
+	
+	private void compact()
+	{
+		int target = 0;
+		for(int i = 0; i < size; ++i)
+		{
+			if((eliminated[i / TILE] >>> (i % TILE) & 1) != 0) continue;
+			if(target != i)
+			{
+				for(int k = 0; k < dimensions; ++k) columns[k][target] = columns[k][i];
+				rows[target] = rows[i];
+			}
+			++target;
+		}
+		size = target;
+	}
+	
+	int[] toRows()
+	{
+		return Arrays.copyOf(rows, size);
+	}
+}
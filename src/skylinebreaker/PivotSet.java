@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+/**
+ * Rows against which subtrees of an LSD tree are pruned: a pivot dominates every row of a subtree 
+ * if it is not worse than the lower corner of the subtree in any level and better in one.
+ * Seeded with the rows of the first local skyline nearest to zero in L1 and on each axis,
+ * it grows by the best row of every further local skyline that no pivot covers yet, up to {@link #MAX_PIVOTS}.
+ * The levels of the pivots are kept in one flat array that is replaced on growth, so tests read it without locking.
+ * Counts for each pivot the buckets it pruned if the system property {@code skylinebreaker.pivotStatistics} is set,
+ * since counting walks the pruned subtrees. Thread-safe.
+ */
+final class PivotSet {
+	
+	static final int MAX_PIVOTS = 16;
+	static final boolean STATISTICS = Boolean.getBoolean("skylinebreaker.pivotStatistics");
+	
+	private final LevelStore store;
+	private final int dimensions;
+	private final int[] rows = new int[MAX_PIVOTS];
+	private volatile int[] levels = new int[0];
+	private final AtomicLongArray pruned = new AtomicLongArray(MAX_PIVOTS);
+	
+	PivotSet(final LevelStore store)
+	{
+		this.store = store;
+		this.dimensions = store.dimensions;
+	}
+	
+	/**
+	 * @param localSkyline sorted by overall level
+	 */
+	synchronized void seed(final int[] localSkyline)
+	{
+		if(localSkyline.length == 0) return;
+		offer(localSkyline[0]);
+		for(int i = 0; i < dimensions; ++i)
+		{
+			int best = localSkyline[0];
+			for(final int row : localSkyline) if(store.getLevel(row, i) < store.getLevel(best, i)) best = row;
+			offer(best);
+		}
+	}
+	
+	/**
+	 * Offers the row of the local skyline with the least overall level.
+	 * @param localSkyline sorted by overall level
+	 */
+	void offer(final int[] localSkyline)
+	{
+		if(localSkyline.length > 0 && size() < MAX_PIVOTS) offer(localSkyline[0]);
+	}
+	
+	/**
+	 * Adds the row unless the set is full or a pivot is not worse in any level, i.e. prunes whatever the row would prune.
+	 */
+	synchronized void offer(final int row)
+	{
+		final int[] current = levels;
+		final int size = current.length / dimensions;
+		if(size == MAX_PIVOTS) return;
+		for(int p = 0; p < size; ++p)
+		{
+			boolean covered = true;
+			for(int i = 0; i < dimensions && covered; ++i) covered = current[p*dimensions+i] <= store.getLevel(row, i);
+			if(covered) return;
+		}
+		final int[] grown = Arrays.copyOf(current, current.length + dimensions);
+		for(int i = 0; i < dimensions; ++i) grown[size*dimensions+i] = store.getLevel(row, i);
+		rows[size] = row;
+		levels = grown;
+	}
+	
+	/**
+	 * @return the pivot dominating every row with levels of at least the corner, or -1
+	 */
+	int find(final int[] corner)
+	{
+		final int[] current = levels;
+		for(int p = 0, o = 0; o < current.length; ++p, o += dimensions)
+		{
+			boolean strict = false;
+			int i = 0;
+			for(; i < dimensions; ++i)
+			{
+				if(current[o+i] > corner[i]) break;
+				if(current[o+i] < corner[i]) strict = true;
+			}
+			if(i == dimensions && strict) return p;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Counts the buckets of the subtree pruned by the pivot if statistics are enabled.
+	 */
+	void pruned(final int pivot, final Node n)
+	{
+		if(STATISTICS) pruned.addAndGet(pivot, countBuckets(n));
+	}
+	
+	private static int countBuckets(final Node n)
+	{
+		if(n instanceof BucketNode) return 1;
+		return countBuckets(((DirectoryNode) n).left) + countBuckets(((DirectoryNode) n).right);
+	}
+	
+	int size()
+	{
+		return levels.length / dimensions;
+	}
+	
+	synchronized int[] getRows()
+	{
+		return Arrays.copyOf(rows, size());
+	}
+	
+	long[] getPruned()
+	{
+		final long[] counts = new long[size()];
+		for(int p = 0; p < counts.length; ++p) counts[p] = pruned.get(p);
+		return counts;
+	}
+}
@@ -27,46 +27,128 @@
 
 package skylinebreaker;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import compat.FeatureVector;
-import compat.InputData;
-import compat.ScoringFunction;
 
 
 public abstract class SBBase {
 
+	/** seconds to wait for the workers of a failed query before its pages are returned to the arena */
+	static final long RELEASE_TIMEOUT = 10;
+	
+	/**
+	 * Returns the pages of the store to its arena once the workers have finished, waiting for them at most {@link #RELEASE_TIMEOUT} seconds.
+	 * A worker still appending would write into pages that the arena already handed to the next query, 
+	 * so if one does not finish in time, the pages are left to the collector.
+	 */
+	static void release(final LevelStore store, final Thread[] workers)
+	{
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RELEASE_TIMEOUT);
+		try
+		{
+			for(final Thread worker : workers)
+			{
+				if(worker == null) continue;
+				final long left = deadline - System.nanoTime();
+				if(left > 0) TimeUnit.NANOSECONDS.timedJoin(worker, left);
+				if(worker.isAlive()) return;
+			}
+			store.release();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
 
 	public static final class NearestNeighborOfZero
 	{
-		public InputData neighbor = null;
+		public int neighbor = -1;
 		public int norm = Integer.MAX_VALUE;
 		public int threadCount = 0;
 	}
 	
-	 public static InputData[] combineLocalSkyline(ScoringFunction scoringFunction, final InputData[] a, final InputData[] b) 
+	/**
+	 * Merges two local skylines in the manner of a sort-filter skyline.
+	 * Both inputs have to be sorted by overall level, see {@link LSDAbstractTree.BucketNode#computeLocalSkyline()}.
+	 * Walking both in merged order, a row can only be dominated by rows already seen, and only by those of the other input, 
+	 * since each input is a skyline on its own. Hence every test is one-directional.
+	 * @return the merged skyline, again sorted by overall level
+	 */
+	public static int[] combineLocalSkyline(final LevelStore store, final int[] a, final int[] b) 
+	{
+		if(store.blockDominance) return combineLocalSkylineBlockwise(store, a, b);
+		final int[] c = new int[a.length + b.length];
+		int creserved = 0;
+		// the survivors of a and b are moved to the front of a and b
+		int i = 0, areserved = 0, astop = Integer.MAX_VALUE;
+		int j = 0, breserved = 0, bstop = Integer.MAX_VALUE;
+		while(i < a.length || j < b.length)
 		{
-			int areserved = a.length;
-			int breserved = b.length;
-			
-			for(int i = 0; i < a.length && i < areserved; ++i)
+			if(j == b.length || (i < a.length && store.getOverallLevel(a[i]) <= store.getOverallLevel(b[j])))
 			{
-				if(b.length == 0) break;
-				aLoop:
-				for(int j = 0; j < b.length && j < breserved; ++j)
-				{
-					bLoop:
-					switch(scoringFunction.evaluate(a[i]).compare(scoringFunction.evaluate(b[j]))) {
-					case FeatureVector.LESS: 
-						a[i--] = a[--areserved];
-						break aLoop;
-					case FeatureVector.GREATER: 
-						b[j--] = b[--breserved];
-						break bLoop;
-					}
-				}
+				final int row = a[i++];
+				if(isDominated(store, row, b, breserved, bstop)) continue;
+				a[areserved++] = row;
+				astop = Math.min(astop, store.getMaxLevel(row));
+				c[creserved++] = row;
+			}
+			else
+			{
+				final int row = b[j++];
+				if(isDominated(store, row, a, areserved, astop)) continue;
+				b[breserved++] = row;
+				bstop = Math.min(bstop, store.getMaxLevel(row));
+				c[creserved++] = row;
 			}
-			final InputData[] c = new InputData[areserved + breserved];
-			for(int i = 0; i < areserved; ++i) c[i] = a[i];
-			for(int i = 0; i < breserved; ++i) c[i+areserved] = b[i];
-			return c;
 		}
+		return creserved == c.length ? c : Arrays.copyOf(c, creserved);
+	}
+	
+	/**
+	 * @param skyline rows sorted by overall level, that have been seen before the given row
+	 * @param stop the least maximal level of the skyline rows: a row whose levels all exceed it is dominated without further tests (the stop point of SaLSa)
+	 */
+	private static boolean isDominated(final LevelStore store, final int row, final int[] skyline, final int length, final int stop)
+	{
+		if(store.getMinLevel(row) > stop) return true;
+		final int overallLevel = store.getOverallLevel(row);
+		for(int k = 0; k < length; ++k)
+		{
+			// rows with the same overall level are either equal or incomparable, and so are all following rows
+			if(store.getOverallLevel(skyline[k]) == overallLevel) return false;
+			if(store.compare(skyline[k], row) == FeatureVector.GREATER) return true;
+		}
+		return false;
+	}
+	 
+	private static int[] combineLocalSkylineBlockwise(final LevelStore store, final int[] a, final int[] b)
+	{
+		// same merge order as combineLocalSkyline, but the survivors of either side are tested tile-wise
+		final LevelWindow awindow = new LevelWindow(store, a.length);
+		final LevelWindow bwindow = new LevelWindow(store, b.length);
+		final int[] c = new int[a.length + b.length];
+		int creserved = 0;
+		int i = 0, j = 0;
+		while(i < a.length || j < b.length)
+		{
+			if(j == b.length || (i < a.length && store.getOverallLevel(a[i]) <= store.getOverallLevel(b[j])))
+			{
+				final int row = a[i++];
+				if(!bwindow.survives(row)) continue;
+				awindow.add(row);
+				c[creserved++] = row;
+			}
+			else
+			{
+				final int row = b[j++];
+				if(!awindow.survives(row)) continue;
+				bwindow.add(row);
+				c[creserved++] = row;
+			}
+		}
+		return creserved == c.length ? c : Arrays.copyOf(c, creserved);
+	}
 }
@@ -30,11 +30,13 @@ package skylinebreaker;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import skylinebreaker.LSDAbstractTree.LSDAbstractTreeFactory;
 import skylinebreaker.SBBase.NearestNeighborOfZero;
@@ -48,71 +50,125 @@ public class SBFork {
 	
 	final LSDAbstractTreeFactory treeFactory;
 	final ScoringFunction scoringFunction;
-	final Iterator<InputData> inputIterator;
+	final LevelStore store;
+	final InputFeed input;
 	final int processes;
+	/** whether the query is handed over to {@link SBSweep}, which needs neither the pool nor a store */
+	private final boolean sweep;
 	public SBFork(final int processes, final LSDAbstractTreeFactory treeFactory, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction)
 	{
-		forkPool = new ForkJoinPool(processes);
+		this(processes, treeFactory, InputFeed.of(inputIterator), scoringFunction);
+	}
+	public SBFork(final int processes, final LSDAbstractTreeFactory treeFactory, final RowSource source, final ScoringFunction scoringFunction)
+	{
+		this(processes, treeFactory, InputFeed.of(source, processes), scoringFunction);
+	}
+	private SBFork(final int processes, final LSDAbstractTreeFactory treeFactory, final InputFeed input, final ScoringFunction scoringFunction)
+	{
+		this.sweep = SBSweep.isApplicable(scoringFunction);
+		forkPool = sweep ? null : new ForkJoinPool(processes);
 		this.processes = processes;
-		this.inputIterator = inputIterator;
+		this.input = input;
 		this.scoringFunction = scoringFunction;
+		this.store = sweep ? null : new LevelStore(scoringFunction);
+		this.pivots = sweep ? null : new PivotSet(store);
 		this.treeFactory = treeFactory;
 
 	}
+	/**
+	 * Runs the query; returns as soon as the last merge has finished.
+	 */
 	public InputData[] compute() throws InterruptedException
 	{
+		if(sweep) return SBSweep.evaluate(processes, input, scoringFunction);
 		
-		final LSDWorker[] threads = new LSDWorker[processes];
-		for(int i = 0; i < processes; ++i) threads[i] = new LSDWorker(i, (InputData) inputIterator.next());
-		for(int i = 0; i < processes; ++i) forkPool.submit(threads[i]);
-		
-		while(forkPool.getQueuedSubmissionCount() > 0 || !forkPool.isQuiescent()) 
+		try
 		{
-			Thread.sleep(10);
-			InputData[] a = null, b = null;
+			final LSDWorker[] threads = new LSDWorker[processes];
+			for(int i = 0; i < processes; ++i) threads[i] = new LSDWorker(i, input.next());
+			for(int i = 0; i < processes; ++i) submit(threads[i]);
+			
+			completion.await();
+			if(failure != null) throw new IllegalStateException(failure);
 			
-			int queueSize;
-			do
+			assert localSkylineQueue.size() == 1;
+			final InputData[] skyline = store.getRows(localSkylineQueue.poll());
+			pivotRows = store.getRows(pivots.getRows());
+			return skyline;
+		}
+		finally
+		{
+			if(pendingTasks.get() == 0)
 			{
-				
-			    synchronized(localSkylineQueue) 
-			    {
-			    	queueSize = localSkylineQueue.size();
-			    	//if(queueSize > 1) System.out.println("Found Queue-Size: " + queueSize);
-			    	if(queueSize > 1)
-			    	{
-			    		a = localSkylineQueue.poll();
-			    		b = localSkylineQueue.poll();
-			    	}
-			    	
-			    }
-			    
-			    if(a != null) forkPool.submit(new SkylineMergeWorker(a, b));
+				forkPool.shutdown();
+				store.release();
 			}
-			while(queueSize > 3);
+			else releaseWhenTerminated();
+		}
+	}
+	
+	/**
+	 * Cancels the remaining tasks and returns the pages to the arena once no task can append to them any more.
+	 * If the running tasks do not finish in time, the pages are left to the collector.
+	 */
+	private void releaseWhenTerminated()
+	{
+		forkPool.shutdownNow();
+		try
+		{
+			if(forkPool.awaitTermination(SBBase.RELEASE_TIMEOUT, TimeUnit.SECONDS)) store.release();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
 		}
-		forkPool.shutdown();
-		forkPool.awaitTermination(1, TimeUnit.MINUTES);
-		
-		//System.out.println("Final Queue-Size: " + localSkylineQueue.size()); TODO
-		if(localSkylineQueue.size() == 2) return SBBase.combineLocalSkyline(scoringFunction, localSkylineQueue.poll(), localSkylineQueue.poll());
-		
-		
-		//forkPool.awaitTermination(2, TimeUnit.MINUTES);
-		//forkPool.getRunningThreadCount();
-		//forkPool.
-		assert localSkylineQueue.size() == 1;
-		return localSkylineQueue.poll();
 	}
 
+	/**
+	 * Number of submitted tasks that have not finished yet. 
+	 * A task submits its follow-up tasks (merges, subtrees) before it finishes, so the count drops to zero exactly when the last merge is done.
+	 */
+	private final AtomicInteger pendingTasks = new AtomicInteger();
+	private final CountDownLatch completion = new CountDownLatch(1);
+	private volatile Throwable failure = null;
 	
+	private void finished()
+	{
+		if(pendingTasks.decrementAndGet() == 0) completion.countDown();
+	}
+	private void failed(final Throwable e)
+	{
+		failure = e;
+		completion.countDown();
+	}
 
+	/**
+	 * Barrier for the workers: pruning starts once every worker has seeded the pivots with its first local skyline.
+	 */
 	NearestNeighborOfZero nnzero = new NearestNeighborOfZero();
+	final PivotSet pivots;
+	private InputData[] pivotRows = new InputData[0];
+	
+	/**
+	 * @return the rows used for pruning by {@link #compute()}; none if the query was handed over to {@link SBSweep}
+	 */
+	public InputData[] getPivots()
+	{
+		return pivotRows.clone();
+	}
+	
+	/**
+	 * @return for each pivot, in the order of {@link #getPivots()}, the number of buckets it pruned; 
+	 * zeros unless the system property {@code skylinebreaker.pivotStatistics} is set
+	 */
+	public long[] getPrunedBuckets()
+	{
+		return pivots == null ? new long[0] : pivots.getPruned();
+	}
 	
 	
 	final class LSDWorker implements Runnable
 	{
-		InputData[] data = null;
 		private final InputData init_value;
 		LSDAbstractTree tree;
 		final int number;
@@ -129,17 +185,9 @@ public class SBFork {
 		public void run()
     	{
 			try {
-				tree = treeFactory.get(scoringFunction, init_value);
-				while(true)
-	    		{
-	    			InputData element;
-	    			synchronized(inputIterator)
-	    			{
-	    				if(!inputIterator.hasNext()) break;
-	    				element = (InputData) inputIterator.next();
-	    			}
-	    			tree.add(element);
-	    		}
+				tree = treeFactory.get(store, init_value);
+				final InputData[] buffer = InputFeed.newBuffer();
+				while(input.feed(tree, buffer));
 				final LSDAbstractTree.Node root = tree.getRoot();
 				LSDAbstractTree.Node n = root;
 				int depth = 0;
@@ -151,23 +199,12 @@ public class SBFork {
 					++depth;
 				}
 				final LSDAbstractTree.BucketNode bn = (LSDAbstractTree.BucketNode) n;
-				InputData[] zeroLocalSkyline = bn.computeLocalSkyline();
+				final int[] zeroLocalSkyline = bn.computeLocalSkyline();
 				{
-					int nearestToZeroNorm = Integer.MAX_VALUE;
-					InputData nearestToZero = null;
-					for(final InputData element : zeroLocalSkyline)
-					{
-						final int l1n = tree.getOverallLevel(element);
-						if(nearestToZeroNorm > l1n) { nearestToZero = element; nearestToZeroNorm = l1n; }
-					}
-				    synchronized(localSkylineQueue) { localSkylineQueue.add(zeroLocalSkyline); }
+					pivots.seed(zeroLocalSkyline);
+				    addLocalSkyline(zeroLocalSkyline);
 					synchronized(nnzero)
 					{
-						if(nnzero.norm > nearestToZeroNorm) 
-						{
-							nnzero.norm = nearestToZeroNorm;
-							nnzero.neighbor = nearestToZero;
-						}
 						++nnzero.threadCount;
 						nnzero.notifyAll();
 						while(nnzero.threadCount < processes)
@@ -194,28 +231,35 @@ public class SBFork {
 						final LSDAbstractTree.DirectoryNode dn = n.getParent(); --depth;
 						assert (dn.right != n) : "Upward going not on the left side";
 						
-						if(dn.right instanceof LSDAbstractTree.BucketNode) submit(new BucketNodeWorker(true, (LSDAbstractTree.BucketNode) dn.right));
-						else
-						{
-							final int[] minlevels = new int[tree.dimensions];
-							final int dim = tree.getSplitAxis(depth);
-							minlevels[dim] = dn.location;
-							submit(new PruneBucketWorker( (LSDAbstractTree.DirectoryNode)dn.right, depth+1, minlevels));
-						}
+						final int[] minlevels = new int[tree.dimensions];
+						minlevels[tree.getSplitAxis(depth)] = dn.location;
+						submitPruned(dn.right, depth+1, minlevels);
 						n = dn;				
 					}
 				}
 				
 			} 
-			catch (InterruptedException e) 
+			catch (Throwable e) 
 			{
-				e.printStackTrace();
+				failed(e);
 			}
+			finished();
     	}
 		
 
 		
 
+		/**
+		 * Submits the subtree unless a pivot dominates its lower corner.
+		 */
+		private void submitPruned(final LSDAbstractTree.Node n, final int depth, final int[] minlevels)
+		{
+			final int pivot = pivots.find(minlevels);
+			if(pivot >= 0) pivots.pruned(pivot, n);
+			else if(n instanceof LSDAbstractTree.BucketNode) submit(new BucketNodeWorker(true, (LSDAbstractTree.BucketNode) n));
+			else submit(new PruneBucketWorker((LSDAbstractTree.DirectoryNode) n, depth, minlevels));
+		}
+		
 		class PruneBucketWorker extends RecursiveAction
 		{
 			private static final long serialVersionUID = 3191824942893677558L;
@@ -231,33 +275,34 @@ public class SBFork {
 
 			@Override
 			protected void compute() {
-				final int dim = tree.getSplitAxis(depth);
-				final int oldvalue = minlevels[dim]; 
-				minlevels[dim] = dn.location;
-				boolean greater = true;
-				for(int i = 0; i < tree.dimensions; ++i) if(minlevels[i] <= tree.getLevel(nnzero.neighbor,i)) { greater = false; break; }
-				minlevels[dim] = oldvalue;
-				if(dn.left instanceof LSDAbstractTree.BucketNode) submit(new BucketNodeWorker(true, (LSDAbstractTree.BucketNode) dn.left));
-				else submit(new PruneBucketWorker( ((LSDAbstractTree.DirectoryNode)dn.left), depth+1, minlevels));
-				
-				if(!greater)
+				try
+				{
+					prune();
+				}
+				catch(Throwable e)
 				{
-					final int[] rightminlevels = minlevels.clone();
-					rightminlevels[dim] = dn.location;
-					if(dn.right instanceof LSDAbstractTree.BucketNode) submit(new BucketNodeWorker(true, (LSDAbstractTree.BucketNode) dn.right));
-					else submit(new PruneBucketWorker( ((LSDAbstractTree.DirectoryNode)dn.right), depth+1, rightminlevels));
+					failed(e);
 				}
+				finished();
+			}
+			
+			private void prune() {
+				final int dim = tree.getSplitAxis(depth);
+				submitPruned(dn.left, depth+1, minlevels.clone());
+				final int[] rightminlevels = minlevels.clone();
+				rightminlevels[dim] = Math.max(rightminlevels[dim], dn.location);
+				submitPruned(dn.right, depth+1, rightminlevels);
 			}
 		}
 		
 		
 		
 	}				
-	private final Queue<InputData[]> localSkylineQueue = new LinkedList<InputData[]>();
+	private final Queue<int[]> localSkylineQueue = new LinkedList<int[]>();
 
-	public void addLocalSkyline(final InputData[] localSkyline)
+	public void addLocalSkyline(final int[] localSkyline)
 	{
-		InputData[] a = null;
+		int[] a = null;
 	    synchronized(localSkylineQueue) 
 	    {
 	    	if(localSkylineQueue.isEmpty()) localSkylineQueue.add(localSkyline);
@@ -268,21 +313,22 @@ public class SBFork {
 	
 	
 	private void submit(ForkJoinTask<?> task) {
-		synchronized(forkPool) { forkPool.submit(task); }
-		
+		pendingTasks.incrementAndGet();
+		forkPool.submit(task);
 	}
 	private void submit(Runnable task) {
-		synchronized(forkPool) { forkPool.submit(task); }
+		pendingTasks.incrementAndGet();
+		forkPool.submit(task);
 	}
 
 
 	class SkylineMergeWorker implements Runnable
 	{
 		
-		final InputData[] a;
-		final InputData[] b;
+		final int[] a;
+		final int[] b;
 		
-		public SkylineMergeWorker(final InputData[] a, final InputData[] b) 
+		public SkylineMergeWorker(final int[] a, final int[] b) 
 		{
 			this.a = a;
 			this.b = b;
@@ -291,16 +337,24 @@ public class SBFork {
 		@Override
 		public void run() 
 		{
-			addLocalSkyline(SBBase.combineLocalSkyline(scoringFunction, a, b));
+			try
+			{
+				addLocalSkyline(SBBase.combineLocalSkyline(store, a, b));
+			}
+			catch(Throwable e)
+			{
+				failed(e);
+			}
+			finished();
 		}
 		
 	}
 	
-class BucketNodeWorker extends ForkJoinTask<InputData[]> 
+class BucketNodeWorker extends ForkJoinTask<int[]> 
 {
 	private static final long serialVersionUID = 3788728179104943691L;
 	final LSDAbstractTree.BucketNode node;
-	private InputData[] result = null;
+	private int[] result = null;
 	private final boolean notify; 
 	BucketNodeWorker(final boolean notify, LSDAbstractTree.BucketNode node)
 	{
@@ -310,25 +364,39 @@ class BucketNodeWorker extends ForkJoinTask<InputData[]>
 	
 	@Override
 	protected boolean exec() {
-		result = node.computeLocalSkyline();
-		if(notify) addLocalSkyline(result);
+		if(!notify)
+		{
+			result = node.computeLocalSkyline();
+			return true;
+		}
+		try
+		{
+			result = node.computeLocalSkyline();
+			pivots.offer(result);
+			addLocalSkyline(result);
+		}
+		catch(Throwable e)
+		{
+			failed(e);
+		}
+		finished();
 		return true;
 	}
 
 	@Override
-	public InputData[] getRawResult() 
+	public int[] getRawResult() 
 	{
 		return result;
 	}
 
 	@Override
-	protected void setRawResult(InputData[] flv) {
+	protected void setRawResult(int[] flv) {
 		result = flv;
 	}
 }	
 
 	
-	private final class DirectoryNodeWorker extends RecursiveTask<InputData[]> 
+	private final class DirectoryNodeWorker extends RecursiveTask<int[]> 
 	{
 		private static final long serialVersionUID = 1L;
 		private final LSDAbstractTree.DirectoryNode node;
@@ -339,21 +407,34 @@ class BucketNodeWorker extends ForkJoinTask<InputData[]>
 			this.node = node;
 		}
 		@Override
-		protected InputData[] compute() 
+		protected int[] compute() 
+		{
+			if(!notify) return merge();
+			try
+			{
+				addLocalSkyline(merge());
+			}
+			catch(Throwable e)
+			{
+				failed(e);
+			}
+			finished();
+			return null;
+		}
+		
+		private int[] merge()
 		{
-			final ForkJoinTask<InputData[]> leftWorker 
+			final ForkJoinTask<int[]> leftWorker 
 				= (node.left instanceof LSDAbstractTree.DirectoryNode) 
 				? new DirectoryNodeWorker(false, (LSDAbstractTree.DirectoryNode) node.left) 
 				: new BucketNodeWorker(false, (LSDAbstractTree.BucketNode) node.left); 
 			leftWorker.fork();
-			final ForkJoinTask<InputData[]> rightWorker 
+			final ForkJoinTask<int[]> rightWorker 
 			= (node.right instanceof LSDAbstractTree.DirectoryNode) 
 			? new DirectoryNodeWorker(false, (LSDAbstractTree.DirectoryNode) node.right) 
 			: new BucketNodeWorker(false, (LSDAbstractTree.BucketNode) node.right); 
 			
-			InputData[] result = SBBase.combineLocalSkyline(scoringFunction, leftWorker.join(), rightWorker.invoke());
-			if(notify) addLocalSkyline(result);
-			return result;
+			return SBBase.combineLocalSkyline(store, leftWorker.join(), rightWorker.invoke());
 		   }
 	 }
 	 
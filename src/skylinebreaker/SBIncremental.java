@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skyline that is maintained while rows keep arriving, instead of being recomputed from scratch.
+ * As rows are only inserted, a row that is dominated once stays dominated, so only the current skyline is kept, in an LSD tree.
+ * An inserted row is tested against the part of the tree that can dominate it; 
+ * if it survives, the skyline rows it dominates are removed from the part of the tree that it can dominate.
+ * Dominated rows are staged in the store but never committed, so the store only grows with the rows that entered the skyline.
+ * Not thread-safe.
+ */
+public final class SBIncremental {
+	
+	/**
+	 * Change of the skyline by an insert.
+	 */
+	public static final class Delta
+	{
+		public final InputData[] entered;
+		public final InputData[] left;
+		
+		Delta(final InputData[] entered, final InputData[] left)
+		{
+			this.entered = entered;
+			this.left = left;
+		}
+		
+		public boolean isEmpty()
+		{
+			return entered.length == 0 && left.length == 0;
+		}
+	}
+	
+	private final LevelStore store;
+	private final LevelStore.Appender appender;
+	private final LSDAbstractTree tree;
+	private int size = 0;
+	
+	public SBIncremental(final ScoringFunction scoringFunction)
+	{
+		store = new LevelStore(scoringFunction);
+		appender = store.appender();
+		tree = new LSDSimpleTree(store, new int[0], 1);
+	}
+	
+	public Delta add(final InputData element)
+	{
+		final List<Integer> left = new ArrayList<Integer>();
+		final int row = offer(element, left);
+		return new Delta(row < 0 ? new InputData[0] : new InputData[] { store.getRow(row) }, rows(left));
+	}
+	
+	/**
+	 * Inserts a batch of rows. The delta is relative to the skyline before the batch, 
+	 * so rows of the batch that are dominated by later rows of the batch are not reported at all.
+	 */
+	public Delta addAll(final Iterator<InputData> elements)
+	{
+		final Set<Integer> entered = new LinkedHashSet<Integer>();
+		final List<Integer> left = new ArrayList<Integer>();
+		final List<Integer> removed = new ArrayList<Integer>();
+		while(elements.hasNext())
+		{
+			final int row = offer(elements.next(), removed);
+			for(final Integer r : removed) if(!entered.remove(r)) left.add(r);
+			removed.clear();
+			if(row >= 0) entered.add(row);
+		}
+		return new Delta(rows(entered), rows(left));
+	}
+	
+	public InputData[] getSkyline()
+	{
+		final List<Integer> rows = new ArrayList<Integer>(size);
+		collect(tree.getRoot(), rows);
+		return rows(rows);
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @param removed receives the skyline rows dominated by the element
+	 * @return the row of the element, or -1 if it is dominated
+	 */
+	private int offer(final InputData element, final List<Integer> removed)
+	{
+		final int staged = appender.stage(element);
+		if(tree.isDominated(staged)) return -1;
+		tree.removeDominated(staged, removed);
+		final int row = appender.commit();
+		tree.insert(row);
+		size += 1 - removed.size();
+		return row;
+	}
+	
+	private static void collect(final Node n, final List<Integer> rows)
+	{
+		if(n instanceof BucketNode)
+		{
+			final BucketNode bn = (BucketNode) n;
+			for(int i = 0; i < bn.reserved; ++i) rows.add(bn.data[i]);
+		}
+		else
+		{
+			collect(((DirectoryNode) n).left, rows);
+			collect(((DirectoryNode) n).right, rows);
+		}
+	}
+	
+	private InputData[] rows(final Iterable<Integer> rows)
+	{
+		final List<InputData> data = new ArrayList<InputData>();
+		for(final Integer row : rows) data.add(store.getRow(row));
+		return data.toArray(new InputData[data.size()]);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skyline engine for small level domains, in the manner of the lattice skyline (LS-B): 
+ * the rows mark their level combinations in a bit lattice, dominance is propagated through the lattice,
+ * and a row is in the skyline iff its node is not dominated. No two rows are ever compared,
+ * so the costs are linear in the input plus the size of the lattice.
+ */
+public final class SBLattice {
+	
+	/**
+	 * Largest lattice the engine accepts; three bits per node are needed while propagating.
+	 */
+	public static final long MAX_NODES = 1L << 28;
+	
+	private SBLattice() {}
+	
+	public static boolean isApplicable(final ScoringFunction scoringFunction)
+	{
+		return LevelLattice.size(scoringFunction) <= MAX_NODES;
+	}
+	
+	public static InputData[] evaluate(final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction)
+	{
+		final LevelLattice lattice = new LevelLattice(scoringFunction);
+		final List<InputData> rows = new ArrayList<InputData>();
+		int[] nodes = new int[InputFeed.MIN_CHUNK];
+		while(inputIterator.hasNext())
+		{
+			final InputData element = inputIterator.next();
+			final int node = lattice.node(element);
+			lattice.mark(node);
+			if(rows.size() == nodes.length) nodes = Arrays.copyOf(nodes, nodes.length*2);
+			nodes[rows.size()] = node;
+			rows.add(element);
+		}
+		lattice.propagate();
+		
+		final List<InputData> skyline = new ArrayList<InputData>();
+		for(int i = 0; i < rows.size(); ++i)
+			if(!lattice.isDominated(nodes[i])) skyline.add(rows.get(i));
+		return skyline.toArray(new InputData[skyline.size()]);
+	}
+	
+	/**
+	 * Reads the source twice instead of keeping the nodes of its rows; only the rows of the skyline are materialized.
+	 */
+	public static InputData[] evaluate(final RowSource source, final ScoringFunction scoringFunction)
+	{
+		final LevelLattice lattice = new LevelLattice(scoringFunction);
+		final int[] buffer = new int[source.getAttributes()];
+		final InputData flyweight = new InputData(buffer);
+		final long size = source.size();
+		for(long row = 0; row < size; ++row)
+		{
+			source.read(row, buffer);
+			lattice.mark(lattice.node(flyweight));
+		}
+		lattice.propagate();
+		
+		final List<InputData> skyline = new ArrayList<InputData>();
+		for(long row = 0; row < size; ++row)
+		{
+			source.read(row, buffer);
+			if(!lattice.isDominated(lattice.node(flyweight))) skyline.add(source.get(row));
+		}
+		return skyline.toArray(new InputData[skyline.size()]);
+	}
+}
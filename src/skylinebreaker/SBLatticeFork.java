@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Parallel version of {@link SBLattice} on a fork-join pool:
+ * the input is marked in the lattice by one ingest task per process, claiming chunks of the input like the tree workers,
+ * dominance is propagated along the lines of each dimension in parallel, and the rows are filtered in parallel.
+ * The lattice bits are set with CAS, so no phase takes a lock.
+ */
+public class SBLatticeFork {
+	
+	/**
+	 * Lattice nodes, respectively rows, per leaf task.
+	 */
+	static final int SPLIT = 1 << 16;
+	
+	final private ForkJoinPool forkPool;
+	
+	final ScoringFunction scoringFunction;
+	final InputFeed input;
+	final RowSource source;
+	final int processes;
+	
+	public SBLatticeFork(final int processes, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction)
+	{
+		this(processes, InputFeed.of(inputIterator), null, scoringFunction);
+	}
+	
+	/**
+	 * Reads the source twice instead of keeping the nodes of its rows; only the rows of the skyline are materialized.
+	 */
+	public SBLatticeFork(final int processes, final RowSource source, final ScoringFunction scoringFunction)
+	{
+		this(processes, InputFeed.of(source, processes), source, scoringFunction);
+	}
+	
+	private SBLatticeFork(final int processes, final InputFeed input, final RowSource source, final ScoringFunction scoringFunction)
+	{
+		forkPool = new ForkJoinPool(processes);
+		this.processes = processes;
+		this.input = input;
+		this.source = source;
+		this.scoringFunction = scoringFunction;
+	}
+	
+	public InputData[] compute()
+	{
+		try
+		{
+			final LevelLattice lattice = new LevelLattice(scoringFunction);
+			
+			final Ingest[] ingests = new Ingest[processes];
+			for(int i = 0; i < processes; ++i) ingests[i] = new Ingest(lattice, source == null);
+			invokeAll(ingests);
+			
+			final AtomicLongArray closure = lattice.closure();
+			for(int i = 0; i < lattice.dimensions(); ++i)
+				forkPool.invoke(new Propagate(lattice, closure, closure, i, 0, lattice.blocks(i), 0, lattice.stride(i)));
+			final Propagate[] strict = new Propagate[lattice.dimensions()];
+			for(int i = 0; i < strict.length; ++i)
+				strict[i] = new Propagate(lattice, closure, lattice.dominated, i, 0, lattice.blocks(i), 0, lattice.stride(i));
+			invokeAll(strict);
+			
+			final List<InputData> skyline = new ArrayList<InputData>();
+			if(source == null)
+			{
+				final FilterRows[] filters = new FilterRows[processes];
+				for(int i = 0; i < processes; ++i) filters[i] = new FilterRows(lattice, ingests[i], 0, ingests[i].rows.size());
+				invokeAll(filters);
+				for(final FilterRows filter : filters) skyline.addAll(filter.getRawResult());
+			}
+			else skyline.addAll(forkPool.invoke(new FilterSource(lattice, 0, source.size())));
+			return skyline.toArray(new InputData[skyline.size()]);
+		}
+		finally
+		{
+			forkPool.shutdown();
+		}
+	}
+	
+	private void invokeAll(final ForkJoinTask<?>[] tasks)
+	{
+		forkPool.invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 4125089117335573318L;
+			
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+	
+	/**
+	 * Marks the rows of the claimed chunks; keeps the rows and their nodes if the input cannot be read again.
+	 */
+	private final class Ingest extends RecursiveAction implements InputFeed.Sink
+	{
+		private static final long serialVersionUID = -2811375404771880349L;
+		private final LevelLattice lattice;
+		private final boolean keep;
+		final List<InputData> rows = new ArrayList<InputData>();
+		int[] nodes = new int[0];
+		private int[] buffer = null;
+		private InputData flyweight = null;
+		
+		Ingest(final LevelLattice lattice, final boolean keep)
+		{
+			this.lattice = lattice;
+			this.keep = keep;
+		}
+		
+		@Override
+		protected void compute() {
+			final InputData[] chunk = InputFeed.newBuffer();
+			while(input.feed(this, chunk));
+		}
+		
+		@Override
+		public void add(final InputData element)
+		{
+			final int node = lattice.node(element);
+			lattice.mark(node);
+			if(!keep) return;
+			if(rows.size() == nodes.length) nodes = Arrays.copyOf(nodes, Math.max(InputFeed.MIN_CHUNK, nodes.length*2));
+			nodes[rows.size()] = node;
+			rows.add(element);
+		}
+		
+		@Override
+		public void add(final RowSource source, final long index)
+		{
+			if(buffer == null)
+			{
+				buffer = new int[source.getAttributes()];
+				flyweight = new InputData(buffer);
+			}
+			source.read(index, buffer);
+			lattice.mark(lattice.node(flyweight));
+		}
+	}
+	
+	private static final class Propagate extends RecursiveAction
+	{
+		private static final long serialVersionUID = 6017426133170307712L;
+		private final LevelLattice lattice;
+		private final AtomicLongArray source;
+		private final AtomicLongArray target;
+		private final int i;
+		private final int fromBlock, toBlock, fromLine, toLine;
+		
+		Propagate(final LevelLattice lattice, final AtomicLongArray source, final AtomicLongArray target, final int i, final int fromBlock, final int toBlock, final int fromLine, final int toLine)
+		{
+			this.lattice = lattice;
+			this.source = source;
+			this.target = target;
+			this.i = i;
+			this.fromBlock = fromBlock;
+			this.toBlock = toBlock;
+			this.fromLine = fromLine;
+			this.toLine = toLine;
+		}
+		
+		@Override
+		protected void compute() {
+			final long nodes = (long) (toBlock - fromBlock) * (toLine - fromLine) * lattice.extent(i);
+			if(nodes <= SPLIT || (toBlock - fromBlock == 1 && toLine - fromLine == 1)) 
+			{
+				lattice.propagateAlong(source, target, i, fromBlock, toBlock, fromLine, toLine);
+				return;
+			}
+			if(toBlock - fromBlock > 1)
+			{
+				final int middle = (fromBlock + toBlock) >>> 1;
+				invokeAll(new Propagate(lattice, source, target, i, fromBlock, middle, fromLine, toLine), 
+						new Propagate(lattice, source, target, i, middle, toBlock, fromLine, toLine));
+			}
+			else
+			{
+				final int middle = (fromLine + toLine) >>> 1;
+				invokeAll(new Propagate(lattice, source, target, i, fromBlock, toBlock, fromLine, middle), 
+						new Propagate(lattice, source, target, i, fromBlock, toBlock, middle, toLine));
+			}
+		}
+	}
+	
+	private static final class FilterRows extends RecursiveTask<List<InputData>>
+	{
+		private static final long serialVersionUID = -5402185322713470551L;
+		private final LevelLattice lattice;
+		private final Ingest ingest;
+		private final int from, to;
+		
+		FilterRows(final LevelLattice lattice, final Ingest ingest, final int from, final int to)
+		{
+			this.lattice = lattice;
+			this.ingest = ingest;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected List<InputData> compute() {
+			if(to - from > SPLIT)
+			{
+				final int middle = (from + to) >>> 1;
+				final FilterRows right = new FilterRows(lattice, ingest, middle, to);
+				right.fork();
+				final List<InputData> skyline = new FilterRows(lattice, ingest, from, middle).compute();
+				skyline.addAll(right.join());
+				return skyline;
+			}
+			final List<InputData> skyline = new ArrayList<InputData>();
+			for(int row = from; row < to; ++row)
+				if(!lattice.isDominated(ingest.nodes[row])) skyline.add(ingest.rows.get(row));
+			return skyline;
+		}
+	}
+	
+	private final class FilterSource extends RecursiveTask<List<InputData>>
+	{
+		private static final long serialVersionUID = 2419658532466339512L;
+		private final LevelLattice lattice;
+		private final long from, to;
+		
+		FilterSource(final LevelLattice lattice, final long from, final long to)
+		{
+			this.lattice = lattice;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected List<InputData> compute() {
+			if(to - from > SPLIT)
+			{
+				final long middle = (from + to) >>> 1;
+				final FilterSource right = new FilterSource(lattice, middle, to);
+				right.fork();
+				final List<InputData> skyline = new FilterSource(lattice, from, middle).compute();
+				skyline.addAll(right.join());
+				return skyline;
+			}
+			final int[] buffer = new int[source.getAttributes()];
+			final InputData flyweight = new InputData(buffer);
+			final List<InputData> skyline = new ArrayList<InputData>();
+			for(long row = from; row < to; ++row)
+			{
+				source.read(row, buffer);
+				if(!lattice.isDominated(lattice.node(flyweight))) skyline.add(source.get(row));
+			}
+			return skyline;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import compat.FeatureVector;
+import compat.InputData;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+/**
+ * Emits the skyline rows of a tree one by one, each as soon as it is confirmed.
+ * Subtrees are visited in ascending order of the overall level of their lower corner, 
+ * which follows from the locations of the directory nodes above them, 
+ * and their rows are taken in ascending order of their overall level interleaved with the subtrees still to visit.
+ * A dominating row has a smaller overall level, so when a row is taken, all rows that can dominate it have been taken before;
+ * the row is skyline if no skyline row emitted so far dominates it.
+ * Subtrees whose lower corner is dominated by an emitted row are skipped.
+ * The tree must not be modified while the skyline is emitted.
+ */
+public final class SBProgressive implements Iterator<InputData> {
+	
+	/**
+	 * Receives the skyline rows as they are confirmed.
+	 */
+	public interface Callback
+	{
+		void confirmed(InputData element);
+	}
+	
+	private static final class Pending implements Comparable<Pending>
+	{
+		final Node node;
+		final int depth;
+		final int[] lower;
+		final int bound;
+		
+		Pending(final Node node, final int depth, final int[] lower)
+		{
+			this.node = node;
+			this.depth = depth;
+			this.lower = lower;
+			int bound = 0;
+			for(final int level : lower) bound += level;
+			this.bound = bound;
+		}
+		
+		@Override
+		public int compareTo(final Pending o)
+		{
+			return Integer.compare(bound, o.bound);
+		}
+	}
+	
+	private final LSDAbstractTree tree;
+	private final LevelStore store;
+	private final PriorityQueue<Pending> nodes = new PriorityQueue<Pending>();
+	/** binary min-heap of the rows of visited buckets, keyed by their overall level in the upper and the row in the lower half */
+	private long[] rows = new long[256];
+	private int pendingRows = 0;
+	private int[] skyline = new int[16];
+	private int size = 0;
+	private int next = -1;
+	
+	public SBProgressive(final LSDAbstractTree tree)
+	{
+		this.tree = tree;
+		this.store = tree.store;
+		nodes.add(new Pending(tree.getRoot(), 0, new int[store.dimensions]));
+	}
+	
+	/**
+	 * Passes the skyline rows to the callback as they are confirmed.
+	 */
+	public static void evaluate(final LSDAbstractTree tree, final Callback callback)
+	{
+		for(final SBProgressive it = new SBProgressive(tree); it.hasNext();) callback.confirmed(it.next());
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		if(next < 0) next = advance();
+		return next >= 0;
+	}
+	
+	@Override
+	public InputData next()
+	{
+		if(!hasNext()) throw new NoSuchElementException();
+		final int row = next;
+		next = -1;
+		return store.getRow(row);
+	}
+	
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * @return the next skyline row, or -1 if there is none
+	 */
+	private int advance()
+	{
+		while(true)
+		{
+			final Pending pending = nodes.peek();
+			if(pendingRows == 0 && pending == null) return -1;
+			if(pendingRows > 0 && (pending == null || (rows[0] >>> 32) <= pending.bound))
+			{
+				final int row = (int) pollRow();
+				if(isDominated(row)) continue;
+				if(size == skyline.length) skyline = Arrays.copyOf(skyline, 2*size);
+				skyline[size++] = row;
+				return row;
+			}
+			nodes.poll();
+			if(isDominated(pending.lower)) continue;
+			if(pending.node instanceof BucketNode)
+			{
+				final BucketNode bn = (BucketNode) pending.node;
+				for(int i = 0; i < bn.reserved; ++i) addRow(((long) store.getOverallLevel(bn.data[i]) << 32) | bn.data[i]);
+				continue;
+			}
+			final DirectoryNode dn = (DirectoryNode) pending.node;
+			final int axis = tree.getSplitAxis(pending.depth);
+			nodes.add(new Pending(dn.left, pending.depth+1, pending.lower));
+			final int[] lower = pending.lower.clone();
+			lower[axis] = Math.max(lower[axis], dn.location);
+			nodes.add(new Pending(dn.right, pending.depth+1, lower));
+		}
+	}
+	
+	private void addRow(final long key)
+	{
+		if(pendingRows == rows.length) rows = Arrays.copyOf(rows, 2*pendingRows);
+		int i = pendingRows++;
+		while(i > 0)
+		{
+			final int parent = (i-1) >>> 1;
+			if(rows[parent] <= key) break;
+			rows[i] = rows[parent];
+			i = parent;
+		}
+		rows[i] = key;
+	}
+	
+	private long pollRow()
+	{
+		final long first = rows[0];
+		final long key = rows[--pendingRows];
+		int i = 0;
+		while(true)
+		{
+			int child = 2*i + 1;
+			if(child >= pendingRows) break;
+			if(child+1 < pendingRows && rows[child+1] < rows[child]) ++child;
+			if(key <= rows[child]) break;
+			rows[i] = rows[child];
+			i = child;
+		}
+		rows[i] = key;
+		return first;
+	}
+	
+	private boolean isDominated(final int row)
+	{
+		for(int i = 0; i < size; ++i) if(store.compare(skyline[i], row) == FeatureVector.GREATER) return true;
+		return false;
+	}
+	
+	/**
+	 * @return whether an emitted row dominates every row with levels of at least the corner
+	 */
+	private boolean isDominated(final int[] corner)
+	{
+		for(int i = 0; i < size; ++i)
+		{
+			final int row = skyline[i];
+			boolean strict = false;
+			boolean dominates = true;
+			for(int j = 0; j < corner.length && dominates; ++j)
+			{
+				final int level = store.getLevel(row, j);
+				if(level > corner[j]) dominates = false;
+				else if(level < corner[j]) strict = true;
+			}
+			if(dominates && strict) return true;
+		}
+		return false;
+	}
+}
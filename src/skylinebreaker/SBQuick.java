@@ -40,12 +40,25 @@ public final class SBQuick {
 	
 	public static InputData[] evaluate(final int processes, final LSDAbstractTreeFactory treeFactory, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction) throws InterruptedException
 	{
+		return evaluate(processes, treeFactory, InputFeed.of(inputIterator), scoringFunction);
+	}
+	
+	public static InputData[] evaluate(final int processes, final LSDAbstractTreeFactory treeFactory, final RowSource source, final ScoringFunction scoringFunction) throws InterruptedException
+	{
+		return evaluate(processes, treeFactory, InputFeed.of(source, processes), scoringFunction);
+	}
+	
+	private static InputData[] evaluate(final int processes, final LSDAbstractTreeFactory treeFactory, final InputFeed input, final ScoringFunction scoringFunction) throws InterruptedException
+	{
+		if(SBSweep.isApplicable(scoringFunction)) return SBSweep.evaluate(processes, input, scoringFunction);
+		final LevelStore store = new LevelStore(scoringFunction);
 		final Queue<Integer> notification = new LinkedList<Integer>();
 		
 		final class LSDWorker extends Thread
 		{
 			
-			InputData[] data = null;
+			int[] data = null;
+			Throwable failure = null;
 			private final InputData init_value;
 			final int number;
 			public LSDWorker(final int number, final InputData init_value) 
@@ -59,120 +72,57 @@ public final class SBQuick {
 	    	{
 	    		try 
 	    		{
-		    		final LSDAbstractTree tree = treeFactory.get(scoringFunction, init_value);
-		    		while(true)
-		    		{
-		    			InputData element;
-		    			synchronized(inputIterator)
-		    			{
-		    				if(!inputIterator.hasNext()) break;
-		    				element = (InputData) inputIterator.next();
-		    			}
-		    			tree.add(element);
-		    		}
+		    		final LSDAbstractTree tree = treeFactory.get(store, init_value);
+		    		final InputData[] buffer = InputFeed.newBuffer();
+		    		while(input.feed(tree, buffer));
 		    		
-						data = new SBSingle(tree).computeSkyline(scoringFunction);
+						data = new SBSingle(tree).computeSkylineRows();
 				}
 	    		catch (InterruptedException e1) 
 	    		{
 					e1.printStackTrace();
 	    		}
-	    		synchronized(notification) { notification.add(number); notification.notifyAll(); }
+	    		catch (Throwable e)
+	    		{
+	    			failure = e;
+	    		}
+	    		finally
+	    		{
+	    			synchronized(notification) { notification.add(number); notification.notifyAll(); }
+	    		}
 	    	}
 		}
 		
 		//final int processes = Runtime.getRuntime().availableProcessors();
 		final LSDWorker[] threads = new LSDWorker[processes];
-		for(int i = 0; i < processes; ++i) threads[i] = new LSDWorker(i, (InputData) inputIterator.next());
-		for(int i = 0; i < processes; ++i) threads[i].start();
-		final SkylineMergeQueue skylineMergeQueue = new SkylineMergeQueue(scoringFunction, processes);
-		int finishedThreads = 0;
-		while(finishedThreads != threads.length)
-		{
-			int threadNum;
-			synchronized(notification) 
-			{ 
-				while(notification.isEmpty()) notification.wait(); 
-				threadNum = notification.poll();
-			}
-			++finishedThreads;
-			final LSDWorker thread = threads[threadNum];
-			thread.join();
-			final InputData[] localSkyline = thread.data;
-			if(localSkyline != null) skylineMergeQueue.add(localSkyline);
-		}
-		skylineMergeQueue.stop();
-		
-		for(SkylineMergeQueue.SkylineMergeWorker worker : skylineMergeQueue.threads)
-		{
-			worker.interrupt();
-			worker.join();
-		}
-		assert skylineMergeQueue.computedLocalSkylines.size() == 1;
-		return skylineMergeQueue.computedLocalSkylines.poll();
-	}
-
-	final static class SkylineMergeQueue
-	{
-		final Queue<InputData[]> computedLocalSkylines = new LinkedList<InputData[]>();
-		final SkylineMergeWorker[] threads;
-		private boolean running = true;
-		final ScoringFunction scoringFunction;
-		public SkylineMergeQueue(final ScoringFunction scoringFunction, final int maxThreads)
+		try
 		{
-			this.scoringFunction = scoringFunction;
-			this.threads = new SkylineMergeWorker[Math.max(maxThreads/2, 1)];
-			for(int i = 0; i < threads.length; ++i)
+			for(int i = 0; i < processes; ++i) threads[i] = new LSDWorker(i, input.next());
+			for(int i = 0; i < processes; ++i) threads[i].start();
+			final SkylineMergeQueue skylineMergeQueue = new SkylineMergeQueue(store, processes);
+			int finishedThreads = 0;
+			while(finishedThreads != threads.length)
 			{
-				threads[i] = new SkylineMergeWorker();
-				threads[i].start();
+				int threadNum;
+				synchronized(notification) 
+				{ 
+					while(notification.isEmpty()) notification.wait(); 
+					threadNum = notification.poll();
+				}
+				++finishedThreads;
+				final LSDWorker thread = threads[threadNum];
+				thread.join();
+				if(thread.failure != null) throw new IllegalStateException(thread.failure);
+				final int[] localSkyline = thread.data;
+				if(localSkyline != null) skylineMergeQueue.add(localSkyline);
 			}
-
-		}
-		public void stop()
-		{
-			running = false;
+			final InputData[] skyline = store.getRows(skylineMergeQueue.result());
+			return skyline;
 		}
-		public void add(final InputData[] node)
+		finally
 		{
-		       synchronized(computedLocalSkylines) {
-		    	   computedLocalSkylines.add(node);
-		    	   computedLocalSkylines.notify();
-		        }
+			SBBase.release(store, threads);
 		}
-		
-		 class SkylineMergeWorker extends Thread 
-		 {
-		    	@Override
-		    	public void run() 
-		    	{
-		    		try
-		    		{
-		    			while(running || !computedLocalSkylines.isEmpty())
-		    			{
-		    				InputData[] a;
-		    				InputData[] b;
-			    			synchronized(computedLocalSkylines) 
-			    			{
-					    		while(computedLocalSkylines.size() < 2) 
-					    			computedLocalSkylines.wait();
-					    		a = computedLocalSkylines.poll();
-					    		b = computedLocalSkylines.poll();
-			    			}
-			    			
-			    			InputData[] c = SBBase.combineLocalSkyline(scoringFunction, a, b);
-			    			add(c);
-		    			}
-		    		}
-		            catch (InterruptedException ignored)
-		            {
-		            }
-		    	}
-		    }
-		
-		
-		
 	}
-	
-	
+
 }
@@ -30,7 +30,6 @@ package skylinebreaker;
 import java.util.ArrayList;
 
 import compat.InputData;
-import compat.ScoringFunction;
 
 import skylinebreaker.LSDAbstractTree.BucketNode;
 import skylinebreaker.LSDAbstractTree.DirectoryNode;
@@ -38,15 +37,36 @@ import skylinebreaker.LSDAbstractTree.Node;
 
 public class SBSingle {
 	
-	private InputData nearestToZero;
 	private final LSDAbstractTree tree;
+	private final PivotSet pivots;
 	
 	public SBSingle(final LSDAbstractTree tree)
 	{
 		this.tree = tree;
+		this.pivots = new PivotSet(tree.store);
 	}
 	
-	public InputData[] computeSkyline(ScoringFunction scoringFunction) throws InterruptedException
+	public InputData[] computeSkyline() throws InterruptedException
+	{
+		return tree.store.getRows(computeSkylineRows());
+	}
+	
+	/**
+	 * Passes the skyline rows to the callback as soon as each is confirmed, instead of returning them at the end.
+	 * @see SBProgressive
+	 */
+	public void computeSkyline(final SBProgressive.Callback callback)
+	{
+		SBProgressive.evaluate(tree, callback);
+	}
+	
+	int[] computeSkylineRows() throws InterruptedException
+	{
+		if(SBSweep.isApplicable(tree.store.scoringFunction)) return SBSweep.computeSkylineRows(tree);
+		return computeTreeSkylineRows();
+	}
+	
+	int[] computeTreeSkylineRows()
 	{
 		final LSDAbstractTree.Node root = tree.getRoot();
 		Node n = root;
@@ -59,23 +79,16 @@ public class SBSingle {
 			++depth;
 		}
 		final BucketNode bn = (BucketNode) n;
-		InputData[] zeroLocalSkyline = bn.computeLocalSkyline();
-		{
-			int nearestToZeroNorm = Integer.MAX_VALUE;
-			for(final InputData element : zeroLocalSkyline)
-			{
-				final int l1n = tree.getOverallLevel(element);
-				if(nearestToZeroNorm > l1n) { nearestToZero = element; nearestToZeroNorm = l1n; }
-			}
-		}
+		int[] zeroLocalSkyline = bn.computeLocalSkyline();
+		pivots.seed(zeroLocalSkyline);
 		
-		ArrayList<InputData[]> localSkylines = new ArrayList<InputData[]>();
+		ArrayList<int[]> localSkylines = new ArrayList<int[]>();
 
 		for(int i = 0; i < tree.dimensions-1; ++i)
 		{
 			final DirectoryNode dn = n.getParent(); --depth;
 			if(dn == null) break;
-			localSkylines.add(computeBucketSkyline(scoringFunction, dn.left == n ? dn.right : dn.left));
+			localSkylines.add(computeBucketSkyline(tree.store, dn.left == n ? dn.right : dn.left));
 			n = dn;
 			
 		}
@@ -87,53 +100,71 @@ public class SBSingle {
 				final DirectoryNode dn = n.getParent(); --depth;
 				assert (dn.right != n) : "Upward going not on the left side";
 				
-				if(dn.right instanceof BucketNode) localSkylines.add(computeBucketSkyline(scoringFunction, dn.right));
-				else
-				{
-					final int[] minlevels = new int[tree.dimensions];
-					final int dim = tree.getSplitAxis(depth);
-					minlevels[dim] = dn.location;
-					pruneBuckets( (DirectoryNode)dn.right, depth+1, minlevels, localSkylines);
-				}
+				final int[] minlevels = new int[tree.dimensions];
+				minlevels[tree.getSplitAxis(depth)] = dn.location;
+				pruneBuckets(dn.right, depth+1, minlevels, localSkylines);
 				
 				n = dn;
 				//minlevels[getSplitAxis(depth)] = 0;
 				
 			}
 		}
-		for(final InputData[] localSkyline : localSkylines)
-			zeroLocalSkyline = SBBase.combineLocalSkyline(scoringFunction, localSkyline, zeroLocalSkyline);
+		for(final int[] localSkyline : localSkylines)
+			zeroLocalSkyline = SBBase.combineLocalSkyline(tree.store, localSkyline, zeroLocalSkyline);
 		return zeroLocalSkyline;
 	}
 	
-	private void pruneBuckets(final LSDAbstractTree.DirectoryNode dn, final int depth, final int[] minlevels, ArrayList<InputData[]> localSkylines)
+	/**
+	 * @param minlevels the lower corner of the subtree; restored on return
+	 */
+	private void pruneBuckets(final Node n, final int depth, final int[] minlevels, ArrayList<int[]> localSkylines)
 	{
+		final int pivot = pivots.find(minlevels);
+		if(pivot >= 0)
+		{
+			pivots.pruned(pivot, n);
+			return;
+		}
+		if(n instanceof BucketNode)
+		{
+			final int[] localSkyline = ((BucketNode) n).computeLocalSkyline();
+			pivots.offer(localSkyline);
+			localSkylines.add(localSkyline);
+			return;
+		}
+		final DirectoryNode dn = (DirectoryNode) n;
 		final int dim = tree.getSplitAxis(depth);
+		pruneBuckets(dn.left, depth+1, minlevels, localSkylines);
 		final int oldvalue = minlevels[dim]; 
-		minlevels[dim] = dn.location;
-		boolean greater = true;
-		for(int i = 0; i < tree.dimensions; ++i) if(minlevels[i] <= tree.getLevel(nearestToZero, i)) { greater = false; break; }
+		minlevels[dim] = Math.max(oldvalue, dn.location);
+		pruneBuckets(dn.right, depth+1, minlevels, localSkylines);
 		minlevels[dim] = oldvalue;
-		if(dn.left instanceof LSDAbstractTree.BucketNode) localSkylines.add( ((LSDAbstractTree.BucketNode) dn.left).computeLocalSkyline());
-		else pruneBuckets( ((LSDAbstractTree.DirectoryNode)dn.left), depth+1, minlevels, localSkylines);
-		
-		if(!greater){
-			final int[] rightminlevels = minlevels.clone();
-			rightminlevels[dim] = dn.location;
-			if(dn.right instanceof LSDAbstractTree.BucketNode) localSkylines.add( ((LSDAbstractTree.BucketNode) dn.right).computeLocalSkyline());
-			else pruneBuckets( ((LSDAbstractTree.DirectoryNode)dn.right), depth+1, rightminlevels, localSkylines);
-		}
+	}
 	
+	/**
+	 * @return the rows used for pruning so far
+	 */
+	public InputData[] getPivots()
+	{
+		return tree.store.getRows(pivots.getRows());
 	}
 	
+	/**
+	 * @return for each pivot, in the order of {@link #getPivots()}, the number of buckets it pruned; 
+	 * zeros unless the system property {@code skylinebreaker.pivotStatistics} is set
+	 */
+	public long[] getPrunedBuckets()
+	{
+		return pivots.getPruned();
+	}
 	
-	static InputData[] computeBucketSkyline(ScoringFunction scoringFunction, final Node n)
+	static int[] computeBucketSkyline(final LevelStore store, final Node n)
 	{
 		if(n instanceof BucketNode) return ((BucketNode)n).computeLocalSkyline();
 		else 
 		{
 			final DirectoryNode dn = (DirectoryNode) n;
-			return SBBase.combineLocalSkyline(scoringFunction, computeBucketSkyline(scoringFunction, dn.left),computeBucketSkyline(scoringFunction, dn.right));
+			return SBBase.combineLocalSkyline(store, computeBucketSkyline(store, dn.left),computeBucketSkyline(store, dn.right));
 		}
 	}
 
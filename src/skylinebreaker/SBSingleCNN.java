@@ -30,7 +30,6 @@ package skylinebreaker;
 import java.util.ArrayList;
 
 import compat.InputData;
-import compat.ScoringFunction;
 
 import skylinebreaker.LSDAbstractTree.BucketNode;
 import skylinebreaker.LSDAbstractTree.DirectoryNode;
@@ -49,7 +48,12 @@ public class SBSingleCNN {
 		
 	}
 	
-	public InputData[] computeSkyline(ScoringFunction scoringFunction) throws InterruptedException
+	public InputData[] computeSkyline() throws InterruptedException
+	{
+		return tree.store.getRows(computeSkylineRows());
+	}
+	
+	int[] computeSkylineRows() throws InterruptedException
 	{
 		final LSDAbstractTree.Node root = tree.getRoot();
 		Node n = root;
@@ -62,11 +66,11 @@ public class SBSingleCNN {
 			++depth;
 		}
 		final BucketNode bn = (BucketNode) n;
-		InputData[] zeroLocalSkyline = bn.computeLocalSkyline();
+		int[] zeroLocalSkyline = bn.computeLocalSkyline();
 		{
 			int nearestToZeroNorm = Integer.MAX_VALUE;
-			InputData nearestToZero = null;
-			for(final InputData element : zeroLocalSkyline)
+			int nearestToZero = -1;
+			for(final int element : zeroLocalSkyline)
 			{
 				final int l1n = tree.getOverallLevel(element);
 				if(nearestToZeroNorm > l1n) { nearestToZero = element; nearestToZeroNorm = l1n; }
@@ -82,17 +86,16 @@ public class SBSingleCNN {
 				nnzero.notifyAll();
 				while(nnzero.threadCount < processes)
 					nnzero.wait();
-				//if(tree instanceof LSDPruningTree) ((LSDPruningTree)tree).computeOverallLevel(nnzero.neighbor); // hash the value of nnzero TODO
 			}
 		}
 		
-		ArrayList<InputData[]> localSkylines = new ArrayList<InputData[]>();
+		ArrayList<int[]> localSkylines = new ArrayList<int[]>();
 
 		for(int i = 0; i < tree.dimensions-1; ++i)
 		{
 			final DirectoryNode dn = n.getParent(); --depth;
 			if(dn == null) break;
-			localSkylines.add(SBSingle.computeBucketSkyline(scoringFunction, dn.left == n ? dn.right : dn.left));
+			localSkylines.add(SBSingle.computeBucketSkyline(tree.store, dn.left == n ? dn.right : dn.left));
 			n = dn;
 			
 		}
@@ -104,7 +107,7 @@ public class SBSingleCNN {
 				final DirectoryNode dn = n.getParent(); --depth;
 				assert (dn.right != n) : "Upward going not on the left side";
 				
-				if(dn.right instanceof BucketNode) localSkylines.add(SBSingle.computeBucketSkyline(scoringFunction, dn.right));
+				if(dn.right instanceof BucketNode) localSkylines.add(SBSingle.computeBucketSkyline(tree.store, dn.right));
 				else
 				{
 					final int[] minlevels = new int[tree.dimensions];
@@ -118,12 +121,12 @@ public class SBSingleCNN {
 				
 			}
 		}
-		for(final InputData[] localSkyline : localSkylines)
-			zeroLocalSkyline = SBBase.combineLocalSkyline(scoringFunction, localSkyline, zeroLocalSkyline);
+		for(final int[] localSkyline : localSkylines)
+			zeroLocalSkyline = SBBase.combineLocalSkyline(tree.store, localSkyline, zeroLocalSkyline);
 		return zeroLocalSkyline;
 	}
 	
-	private void pruneBuckets(final LSDAbstractTree.DirectoryNode dn, final int depth, final int[] minlevels, ArrayList<InputData[]> localSkylines)
+	private void pruneBuckets(final LSDAbstractTree.DirectoryNode dn, final int depth, final int[] minlevels, ArrayList<int[]> localSkylines)
 	{
 		final int dim = tree.getSplitAxis(depth);
 		final int oldvalue = minlevels[dim]; 
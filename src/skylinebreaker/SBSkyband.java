@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import compat.FeatureVector;
+import compat.InputData;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+/**
+ * k-skyband and top-k dominating queries on an LSD tree.
+ * The k-skyband are the rows dominated by less than k rows. 
+ * The top-k dominating rows are the k rows dominating the most rows; 
+ * a row dominated by k rows is dominated only by rows dominating more rows than itself, 
+ * so they are searched among the k-skyband.
+ * The tree has to keep all rows, like {@link LSDSimpleTree}; pruning trees drop rows that can still be in the k-skyband.
+ */
+public class SBSkyband {
+	
+	private final LSDAbstractTree tree;
+	
+	public SBSkyband(final LSDAbstractTree tree)
+	{
+		this.tree = tree;
+	}
+	
+	public InputData[] computeSkyband(final int k)
+	{
+		return tree.store.getRows(computeSkybandRows(k));
+	}
+	
+	public InputData[] computeTopDominating(final int k)
+	{
+		return tree.store.getRows(computeTopDominatingRows(k));
+	}
+	
+	int[] computeSkybandRows(final int k)
+	{
+		final Counter counter = new Counter(tree);
+		final List<BucketNode> buckets = new ArrayList<BucketNode>();
+		collect(tree.getRoot(), buckets);
+		final List<int[]> skyband = new ArrayList<int[]>(buckets.size());
+		for(final BucketNode bn : buckets) skyband.add(counter.skyband(bn, k));
+		return concat(skyband);
+	}
+	
+	int[] computeTopDominatingRows(final int k)
+	{
+		final int[] candidates = computeSkybandRows(k);
+		final int[] counts = new int[candidates.length];
+		new Counter(tree).countDominated(candidates, 0, candidates.length, counts);
+		return select(candidates, counts, k);
+	}
+	
+	static void collect(final Node n, final List<BucketNode> buckets)
+	{
+		if(n instanceof BucketNode) buckets.add((BucketNode) n);
+		else
+		{
+			collect(((DirectoryNode) n).left, buckets);
+			collect(((DirectoryNode) n).right, buckets);
+		}
+	}
+	
+	static int[] concat(final List<int[]> parts)
+	{
+		int length = 0;
+		for(final int[] part : parts) length += part.length;
+		final int[] rows = new int[length];
+		int offset = 0;
+		for(final int[] part : parts)
+		{
+			System.arraycopy(part, 0, rows, offset, part.length);
+			offset += part.length;
+		}
+		return rows;
+	}
+	
+	/**
+	 * @return the k candidates with the highest counts, ties broken by their order
+	 */
+	static int[] select(final int[] candidates, final int[] counts, final int k)
+	{
+		final long[] keys = new long[candidates.length];
+		for(int i = 0; i < keys.length; ++i) keys[i] = ((long) (Integer.MAX_VALUE - counts[i]) << 32) | i;
+		Arrays.sort(keys);
+		final int[] rows = new int[Math.min(k, keys.length)];
+		for(int i = 0; i < rows.length; ++i) rows[i] = candidates[(int) keys[i]];
+		return rows;
+	}
+	
+	/**
+	 * Counts dominating or dominated rows by descending the tree with the bounds of the visited subtree:
+	 * rows left of a directory node have levels of at most its location, rows right of it of at least its location.
+	 * A subtree is skipped for a row if its bounds rule out dominance, and counted as a whole if its bounds imply it.
+	 * Counting does not modify the tree, so a counter can be shared by threads.
+	 */
+	static final class Counter
+	{
+		private final LSDAbstractTree tree;
+		private final LevelStore store;
+		private final Map<Node, Integer> sizes = new IdentityHashMap<Node, Integer>();
+		
+		Counter(final LSDAbstractTree tree)
+		{
+			this.tree = tree;
+			this.store = tree.store;
+			size(tree.getRoot());
+		}
+		
+		private int size(final Node n)
+		{
+			final int size = n instanceof BucketNode 
+					? ((BucketNode) n).reserved 
+					: size(((DirectoryNode) n).left) + size(((DirectoryNode) n).right);
+			sizes.put(n, size);
+			return size;
+		}
+		
+		/**
+		 * @return the rows of the bucket dominated by less than k rows
+		 */
+		int[] skyband(final BucketNode bn, final int k)
+		{
+			final int[] rows = Arrays.copyOf(bn.data, bn.reserved);
+			final int[] counts = new int[rows.length];
+			countDominators(rows, 0, rows.length, counts, k);
+			int size = 0;
+			for(int i = 0; i < rows.length; ++i) if(counts[i] < k) rows[size++] = rows[i];
+			return Arrays.copyOf(rows, size);
+		}
+		
+		/**
+		 * Counts the rows dominating each of the rows from..to, stopping at the limit.
+		 */
+		void countDominators(final int[] rows, final int from, final int to, final int[] counts, final int limit)
+		{
+			final int[] queries = new int[to - from];
+			for(int i = 0; i < queries.length; ++i) queries[i] = from + i;
+			final int[] upper = new int[store.dimensions];
+			for(int i = 0; i < upper.length; ++i) upper[i] = store.getMaximum(i);
+			countDominators(tree.getRoot(), 0, new int[store.dimensions], upper, rows, queries, queries.length, counts, limit);
+		}
+		
+		private void countDominators(final Node n, final int depth, final int[] lower, final int[] upper, final int[] rows, final int[] queries, final int size, final int[] counts, final int limit)
+		{
+			final int[] remaining = new int[size];
+			int count = 0;
+			for(int i = 0; i < size; ++i)
+			{
+				final int q = queries[i];
+				if(counts[q] >= limit) continue;
+				if(precedes(upper, rows[q])) counts[q] += sizes.get(n);
+				else remaining[count++] = q;
+			}
+			if(count == 0) return;
+			
+			if(n instanceof BucketNode)
+			{
+				final BucketNode bn = (BucketNode) n;
+				for(int i = 0; i < count; ++i)
+				{
+					final int q = remaining[i];
+					for(int j = 0; j < bn.reserved; ++j) 
+						if(store.compare(bn.data[j], rows[q]) == FeatureVector.GREATER && ++counts[q] >= limit) break;
+				}
+				return;
+			}
+			final DirectoryNode dn = (DirectoryNode) n;
+			final int axis = tree.getSplitAxis(depth);
+			final int upperBound = upper[axis];
+			upper[axis] = Math.min(upperBound, dn.location);
+			countDominators(dn.left, depth+1, lower, upper, rows, remaining, count, counts, limit);
+			upper[axis] = upperBound;
+			
+			final int lowerBound = lower[axis];
+			lower[axis] = Math.max(lowerBound, dn.location);
+			int right = 0;
+			for(int i = 0; i < count; ++i) 
+				if(store.getLevel(rows[remaining[i]], axis) >= lower[axis]) remaining[right++] = remaining[i];
+			countDominators(dn.right, depth+1, lower, upper, rows, remaining, right, counts, limit);
+			lower[axis] = lowerBound;
+		}
+		
+		/**
+		 * Counts the rows dominated by each of the rows from..to.
+		 */
+		void countDominated(final int[] rows, final int from, final int to, final int[] counts)
+		{
+			final int[] queries = new int[to - from];
+			for(int i = 0; i < queries.length; ++i) queries[i] = from + i;
+			final int[] upper = new int[store.dimensions];
+			for(int i = 0; i < upper.length; ++i) upper[i] = store.getMaximum(i);
+			countDominated(tree.getRoot(), 0, new int[store.dimensions], upper, rows, queries, queries.length, counts);
+		}
+		
+		private void countDominated(final Node n, final int depth, final int[] lower, final int[] upper, final int[] rows, final int[] queries, final int size, final int[] counts)
+		{
+			final int[] remaining = new int[size];
+			int count = 0;
+			for(int i = 0; i < size; ++i)
+			{
+				final int q = queries[i];
+				if(precedes(rows[q], lower)) counts[q] += sizes.get(n);
+				else remaining[count++] = q;
+			}
+			if(count == 0) return;
+			
+			if(n instanceof BucketNode)
+			{
+				final BucketNode bn = (BucketNode) n;
+				for(int i = 0; i < count; ++i)
+				{
+					final int q = remaining[i];
+					for(int j = 0; j < bn.reserved; ++j) 
+						if(store.compare(rows[q], bn.data[j]) == FeatureVector.GREATER) ++counts[q];
+				}
+				return;
+			}
+			final DirectoryNode dn = (DirectoryNode) n;
+			final int axis = tree.getSplitAxis(depth);
+			final int lowerBound = lower[axis];
+			lower[axis] = Math.max(lowerBound, dn.location);
+			countDominated(dn.right, depth+1, lower, upper, rows, remaining, count, counts);
+			lower[axis] = lowerBound;
+			
+			final int upperBound = upper[axis];
+			upper[axis] = Math.min(upperBound, dn.location);
+			int left = 0;
+			for(int i = 0; i < count; ++i) 
+				if(store.getLevel(rows[remaining[i]], axis) <= upper[axis]) remaining[left++] = remaining[i];
+			countDominated(dn.left, depth+1, lower, upper, rows, remaining, left, counts);
+			upper[axis] = upperBound;
+		}
+		
+		/**
+		 * @return whether every row with levels of at least the bounds is dominated by the row
+		 */
+		private boolean precedes(final int row, final int[] bounds)
+		{
+			boolean strict = false;
+			for(int i = 0; i < bounds.length; ++i)
+			{
+				final int level = store.getLevel(row, i);
+				if(level > bounds[i]) return false;
+				if(level < bounds[i]) strict = true;
+			}
+			return strict;
+		}
+		
+		/**
+		 * @return whether every row with levels of at most the bounds dominates the row
+		 */
+		private boolean precedes(final int[] bounds, final int row)
+		{
+			boolean strict = false;
+			for(int i = 0; i < bounds.length; ++i)
+			{
+				final int level = store.getLevel(row, i);
+				if(bounds[i] > level) return false;
+				if(bounds[i] < level) strict = true;
+			}
+			return strict;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import compat.InputData;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+/**
+ * Parallel variant of {@link SBSkyband}: buckets are processed as fork-join tasks along the directory of the tree,
+ * the dominated rows of the top-k dominating candidates are counted in chunks.
+ * Like {@link SBFork}, the pool is shut down after the first query.
+ */
+public class SBSkybandFork {
+	
+	private static final int CHUNK = 256;
+	
+	final private ForkJoinPool forkPool;
+	private final LSDAbstractTree tree;
+	
+	public SBSkybandFork(final int processes, final LSDAbstractTree tree)
+	{
+		forkPool = new ForkJoinPool(processes);
+		this.tree = tree;
+	}
+	
+	public InputData[] computeSkyband(final int k)
+	{
+		try
+		{
+			return tree.store.getRows(skyband(new SBSkyband.Counter(tree), k));
+		}
+		finally
+		{
+			forkPool.shutdown();
+		}
+	}
+	
+	public InputData[] computeTopDominating(final int k)
+	{
+		try
+		{
+			final SBSkyband.Counter counter = new SBSkyband.Counter(tree);
+			final int[] candidates = skyband(counter, k);
+			final int[] counts = new int[candidates.length];
+			forkPool.invoke(new CountWorker(counter, candidates, 0, candidates.length, counts));
+			return tree.store.getRows(SBSkyband.select(candidates, counts, k));
+		}
+		finally
+		{
+			forkPool.shutdown();
+		}
+	}
+	
+	private int[] skyband(final SBSkyband.Counter counter, final int k)
+	{
+		return forkPool.invoke(new SkybandWorker(counter, tree.getRoot(), k));
+	}
+	
+	private static final class SkybandWorker extends RecursiveTask<int[]>
+	{
+		private static final long serialVersionUID = -2731846180951374618L;
+		private final SBSkyband.Counter counter;
+		private final Node node;
+		private final int k;
+		
+		SkybandWorker(final SBSkyband.Counter counter, final Node node, final int k)
+		{
+			this.counter = counter;
+			this.node = node;
+			this.k = k;
+		}
+		
+		@Override
+		protected int[] compute() 
+		{
+			if(node instanceof BucketNode) return counter.skyband((BucketNode) node, k);
+			final DirectoryNode dn = (DirectoryNode) node;
+			final ForkJoinTask<int[]> leftWorker = new SkybandWorker(counter, dn.left, k).fork();
+			final int[] right = new SkybandWorker(counter, dn.right, k).compute();
+			return SBSkyband.concat(Arrays.asList(leftWorker.join(), right));
+		}
+	}
+	
+	private static final class CountWorker extends RecursiveAction
+	{
+		private static final long serialVersionUID = 4406383125866271990L;
+		private final SBSkyband.Counter counter;
+		private final int[] rows;
+		private final int from, to;
+		private final int[] counts;
+		
+		CountWorker(final SBSkyband.Counter counter, final int[] rows, final int from, final int to, final int[] counts)
+		{
+			this.counter = counter;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+			this.counts = counts;
+		}
+		
+		@Override
+		protected void compute() 
+		{
+			if(to - from <= CHUNK)
+			{
+				counter.countDominated(rows, from, to, counts);
+				return;
+			}
+			final int middle = (from + to) >>> 1;
+			invokeAll(new CountWorker(counter, rows, from, middle, counts), new CountWorker(counter, rows, middle, to, counts));
+		}
+	}
+}
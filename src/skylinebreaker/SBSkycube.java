@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skylines of all 2^d-1 subspaces of the criteria, looked up by a mask with bit i set for criterion i.
+ * A row that is in the skyline of a subspace is not strictly better in all criteria of any larger subspace by another row, 
+ * i.e. it is in the extended skyline of every larger subspace.
+ * So every subspace is computed from the extended skyline of one parent subspace with one more criterion, 
+ * which is filtered in a single sort-filter pass into the extended skyline and the skyline of the subspace.
+ * The subspace sums of the levels that the pass sorts by are derived from the parent's sums by subtracting the removed level.
+ * The subspaces form a tree below the full space that is traversed by fork-join tasks.
+ */
+public class SBSkycube {
+	
+	public static final int MAX_DIMENSIONS = 24;
+	
+	final private ForkJoinPool forkPool;
+	final ScoringFunction scoringFunction;
+	final LevelStore store;
+	final InputFeed input;
+	final int processes;
+	private int[][] skylines = null;
+	
+	public SBSkycube(final int processes, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction)
+	{
+		this(processes, InputFeed.of(inputIterator), scoringFunction);
+	}
+	
+	public SBSkycube(final int processes, final RowSource source, final ScoringFunction scoringFunction)
+	{
+		this(processes, InputFeed.of(source, processes), scoringFunction);
+	}
+	
+	private SBSkycube(final int processes, final InputFeed input, final ScoringFunction scoringFunction)
+	{
+		if(scoringFunction.getDimensionality() > MAX_DIMENSIONS) 
+			throw new IllegalArgumentException("Skycube supports at most " + MAX_DIMENSIONS + " dimensions: " + scoringFunction.getDimensionality());
+		forkPool = new ForkJoinPool(processes);
+		this.processes = processes;
+		this.input = input;
+		this.scoringFunction = scoringFunction;
+		this.store = new LevelStore(scoringFunction);
+	}
+	
+	/**
+	 * Computes the skylines of all subspaces; the pool is shut down afterwards.
+	 */
+	public void compute() throws InterruptedException
+	{
+		try
+		{
+			final int[] rows = input.load(store, processes);
+			final long[] keys = new long[rows.length];
+			for(int i = 0; i < rows.length; ++i) keys[i] = ((long) store.getOverallLevel(rows[i]) << 32) | rows[i];
+			SBSweep.sort(keys, processes);
+			final int[] sums = new int[rows.length];
+			for(int i = 0; i < rows.length; ++i)
+			{
+				rows[i] = (int) keys[i];
+				sums[i] = (int) (keys[i] >>> 32);
+			}
+			final int[][] computed = new int[1 << store.dimensions][];
+			forkPool.invoke(new Subspace(computed, (1 << store.dimensions) - 1, rows, sums, -1));
+			skylines = computed;
+		}
+		finally
+		{
+			forkPool.shutdown();
+		}
+	}
+	
+	/**
+	 * @param mask the criteria of the subspace, bit i for criterion i
+	 */
+	public InputData[] getSkyline(final int mask)
+	{
+		if(skylines == null) throw new IllegalStateException("skycube has not been computed");
+		if(mask <= 0 || mask >= skylines.length) throw new IllegalArgumentException("no subspace of " + store.dimensions + " dimensions: " + mask);
+		return store.getRows(skylines[mask]);
+	}
+	
+	public int getDimensionality()
+	{
+		return store.dimensions;
+	}
+	
+	/**
+	 * Computes a subspace from the extended skyline of its parent, then its children from its own extended skyline.
+	 * The parent of a subspace is the subspace with its lowest missing criterion added, 
+	 * so the children remove a criterion below which all criteria are present.
+	 */
+	private final class Subspace extends RecursiveAction
+	{
+		private static final long serialVersionUID = -6250851003447512964L;
+		private final int[][] skylines;
+		private final int mask;
+		private final int[] rows;
+		private final int[] sums;
+		private final int removed;
+		
+		/**
+		 * @param sums the sums of the levels of the rows in the parent subspace
+		 * @param removed the criterion of the parent that is not in this subspace, or -1 for the full space, whose rows are sorted by their sums
+		 */
+		Subspace(final int[][] skylines, final int mask, final int[] rows, final int[] sums, final int removed)
+		{
+			this.skylines = skylines;
+			this.mask = mask;
+			this.rows = rows;
+			this.sums = sums;
+			this.removed = removed;
+		}
+		
+		@Override
+		protected void compute() 
+		{
+			final int[] axes = new int[Integer.bitCount(mask)];
+			for(int i = 0, j = 0; i < store.dimensions; ++i) if((mask & (1 << i)) != 0) axes[j++] = i;
+			
+			final long[] keys = new long[rows.length];
+			for(int i = 0; i < rows.length; ++i) 
+				keys[i] = ((long) (removed < 0 ? sums[i] : sums[i] - store.getLevel(rows[i], removed)) << 32) | i;
+			if(removed >= 0) Arrays.sort(keys);
+			
+			final int[] extended = new int[rows.length];
+			final int[] extendedSums = new int[rows.length];
+			final int[] skyline = new int[rows.length];
+			final int[] skylineSums = new int[rows.length];
+			int extendedSize = 0, skylineSize = 0;
+			for(final long key : keys)
+			{
+				final int row = rows[(int) key];
+				final int sum = (int) (key >>> 32);
+				if(isStrictlyDominated(row, sum - axes.length, axes, extended, extendedSums, extendedSize)) continue;
+				extended[extendedSize] = row;
+				extendedSums[extendedSize++] = sum;
+				if(isDominated(row, sum, axes, skyline, skylineSums, skylineSize)) continue;
+				skyline[skylineSize] = row;
+				skylineSums[skylineSize++] = sum;
+			}
+			skylines[mask] = Arrays.copyOf(skyline, skylineSize);
+			
+			final int[] childRows = Arrays.copyOf(extended, extendedSize);
+			final int[] childSums = Arrays.copyOf(extendedSums, extendedSize);
+			final List<Subspace> children = new ArrayList<Subspace>();
+			for(int b = 0; b < store.dimensions; ++b)
+			{
+				if((mask & (1 << b)) == 0) break;
+				if(mask != 1 << b) children.add(new Subspace(skylines, mask & ~(1 << b), childRows, childSums, b));
+			}
+			invokeAll(children);
+		}
+		
+		/**
+		 * A row strictly better in all criteria has a sum of at most the sum of the row less the number of criteria.
+		 */
+		private boolean isStrictlyDominated(final int row, final int stop, final int[] axes, final int[] window, final int[] sums, final int size)
+		{
+			for(int i = 0; i < size && sums[i] <= stop; ++i)
+			{
+				final int other = window[i];
+				boolean dominated = true;
+				for(final int axis : axes)
+				{
+					if(store.getLevel(other, axis) < store.getLevel(row, axis)) continue;
+					dominated = false;
+					break;
+				}
+				if(dominated) return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * A dominating row has a smaller sum.
+		 */
+		private boolean isDominated(final int row, final int sum, final int[] axes, final int[] window, final int[] sums, final int size)
+		{
+			for(int i = 0; i < size && sums[i] < sum; ++i)
+			{
+				final int other = window[i];
+				boolean dominated = true;
+				for(final int axis : axes)
+				{
+					if(store.getLevel(other, axis) <= store.getLevel(row, axis)) continue;
+					dominated = false;
+					break;
+				}
+				if(dominated) return true;
+			}
+			return false;
+		}
+	}
+}
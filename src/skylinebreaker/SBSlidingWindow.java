@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skyline of the rows of a sliding window, either of the last rows or of the rows of the last milliseconds.
+ * A row that is dominated by a newer row can never become skyline, since the newer row expires after it,
+ * so such rows are removed from the window as soon as the newer row arrives.
+ * The remaining candidates are kept in an LSD tree; the skyline are the candidates that no other candidate dominates.
+ * The store is compacted to the candidates once enough rows have been dropped, so memory stays bounded by the candidates, 
+ * not by the window.
+ * Not thread-safe.
+ */
+public final class SBSlidingWindow {
+	
+	/**
+	 * Number of expired or dominated rows the store may hold before it is compacted.
+	 */
+	private static final int COMPACTION = 4*LevelStore.PAGE_SIZE;
+	
+	private static final class Entry
+	{
+		int row;
+		final long position;
+		
+		Entry(final int row, final long position)
+		{
+			this.row = row;
+			this.position = position;
+		}
+	}
+	
+	private final ScoringFunction scoringFunction;
+	private final long length;
+	private final boolean timeBased;
+	private final LevelArena arena = new LevelArena(4L << 20);
+	private final ArrayDeque<Entry> entries = new ArrayDeque<Entry>();
+	private final List<Integer> removed = new ArrayList<Integer>();
+	private LevelStore store;
+	private LevelStore.Appender appender;
+	private LSDAbstractTree tree;
+	private BitSet candidates = new BitSet();
+	private int size = 0;
+	private int stored = 0;
+	private long sequence = 0;
+	private long now = Long.MIN_VALUE;
+	
+	/**
+	 * @param rows the number of the most recent rows the window holds
+	 */
+	public static SBSlidingWindow countBased(final ScoringFunction scoringFunction, final long rows)
+	{
+		return new SBSlidingWindow(scoringFunction, rows, false);
+	}
+	
+	/**
+	 * @param millis the time span of the window; rows are added with their timestamp
+	 */
+	public static SBSlidingWindow timeBased(final ScoringFunction scoringFunction, final long millis)
+	{
+		return new SBSlidingWindow(scoringFunction, millis, true);
+	}
+	
+	private SBSlidingWindow(final ScoringFunction scoringFunction, final long length, final boolean timeBased)
+	{
+		if(length <= 0) throw new IllegalArgumentException("window length must be positive: " + length);
+		this.scoringFunction = scoringFunction;
+		this.length = length;
+		this.timeBased = timeBased;
+		store = new LevelStore(scoringFunction, false, arena);
+		appender = store.appender();
+		tree = new LSDSimpleTree(store, new int[0], 1);
+	}
+	
+	/**
+	 * Adds a row to a count-based window, expiring the oldest row once the window is full.
+	 */
+	public void add(final InputData element)
+	{
+		if(timeBased) throw new IllegalStateException("time-based window needs a timestamp");
+		insert(element, sequence++);
+	}
+	
+	/**
+	 * Adds a row to a time-based window, expiring the rows older than the window.
+	 * @param timestamp must not be less than the timestamp of the previous row
+	 */
+	public void add(final InputData element, final long timestamp)
+	{
+		if(!timeBased) throw new IllegalStateException("count-based window has no timestamps");
+		expire(timestamp);
+		insert(element, timestamp);
+	}
+	
+	/**
+	 * Advances the clock of a time-based window without adding a row.
+	 */
+	public void expire(final long timestamp)
+	{
+		if(!timeBased) throw new IllegalStateException("count-based window has no timestamps");
+		if(timestamp < now) throw new IllegalArgumentException("timestamp " + timestamp + " precedes " + now);
+		now = timestamp;
+		expireUpTo(timestamp - length);
+	}
+	
+	public InputData[] getSkyline()
+	{
+		final List<InputData> skyline = new ArrayList<InputData>();
+		for(final Entry e : entries)
+			if(candidates.get(e.row) && !tree.isDominated(e.row)) skyline.add(store.getRow(e.row));
+		return skyline.toArray(new InputData[skyline.size()]);
+	}
+	
+	/**
+	 * @return the number of rows of the window that may still become skyline
+	 */
+	public int candidates()
+	{
+		return size;
+	}
+	
+	private void insert(final InputData element, final long position)
+	{
+		if(!timeBased) expireUpTo(position - length);
+		final int row = appender.add(element);
+		tree.removeDominated(row, removed);
+		for(final Integer r : removed) candidates.clear(r);
+		size += 1 - removed.size();
+		removed.clear();
+		tree.insert(row);
+		candidates.set(row);
+		entries.add(new Entry(row, position));
+		if(++stored >= 2*size + COMPACTION) compact();
+	}
+	
+	private void expireUpTo(final long position)
+	{
+		while(!entries.isEmpty() && entries.peek().position <= position)
+		{
+			final int row = entries.poll().row;
+			if(!candidates.get(row)) continue;
+			tree.remove(row);
+			candidates.clear(row);
+			--size;
+		}
+	}
+	
+	/**
+	 * Copies the candidates into a new store in arrival order and bulk-loads a new tree over them.
+	 */
+	private void compact()
+	{
+		final LevelStore compacted = new LevelStore(scoringFunction, false, arena);
+		final LevelStore.Appender compactedAppender = compacted.appender();
+		final BitSet compactedCandidates = new BitSet(size);
+		final int[] rows = new int[size];
+		int count = 0;
+		for(final Iterator<Entry> it = entries.iterator(); it.hasNext();)
+		{
+			final Entry e = it.next();
+			if(!candidates.get(e.row)) 
+			{
+				it.remove();
+				continue;
+			}
+			e.row = compactedAppender.add(store.getRow(e.row));
+			compactedCandidates.set(e.row);
+			rows[count++] = e.row;
+		}
+		store.release();
+		store = compacted;
+		appender = compactedAppender;
+		candidates = compactedCandidates;
+		tree = new LSDSimpleTree(store, rows, 1);
+		stored = count;
+	}
+}
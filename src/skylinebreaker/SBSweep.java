@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import skylinebreaker.LSDAbstractTree.BucketNode;
+import skylinebreaker.LSDAbstractTree.DirectoryNode;
+import skylinebreaker.LSDAbstractTree.Node;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skyline engine for two and three dimensions in O(n log n), independent of the distribution.
+ * The rows are sorted by their first level; in two dimensions a sweep keeps the least second level seen so far,
+ * in three dimensions a staircase of the (second, third) levels seen so far is kept in a balanced tree.
+ * SBSingle, SBQuick, SBQuickCNN and SBFork hand such queries over to this engine unless the system property
+ * {@code skylinebreaker.sweep} is set to false.
+ */
+public final class SBSweep {
+	
+	static final boolean ENABLED = !"false".equals(System.getProperty("skylinebreaker.sweep"));
+	
+	private SBSweep() {}
+	
+	public static boolean isApplicable(final ScoringFunction scoringFunction)
+	{
+		final int d = scoringFunction.getDimensionality();
+		return ENABLED && (d == 2 || d == 3);
+	}
+	
+	public static InputData[] evaluate(final int processes, final Iterator<InputData> inputIterator, final ScoringFunction scoringFunction) throws InterruptedException
+	{
+		return evaluate(processes, InputFeed.of(inputIterator), scoringFunction);
+	}
+	
+	public static InputData[] evaluate(final int processes, final RowSource source, final ScoringFunction scoringFunction) throws InterruptedException
+	{
+		return evaluate(processes, InputFeed.of(source, processes), scoringFunction);
+	}
+	
+	static InputData[] evaluate(final int processes, final InputFeed input, final ScoringFunction scoringFunction) throws InterruptedException
+	{
+		final LevelStore store = new LevelStore(scoringFunction);
+		try
+		{
+			final InputData[] skyline = store.getRows(computeSkylineRows(store, input.load(store, processes), processes));
+			return skyline;
+		}
+		finally
+		{
+			store.release();
+		}
+	}
+	
+	/**
+	 * Computes the skyline of the rows of a filled tree, instead of evaluating its buckets.
+	 */
+	static int[] computeSkylineRows(final LSDAbstractTree tree) throws InterruptedException
+	{
+		final InputFeed.RowList rows = new InputFeed.RowList(null);
+		collect(tree.getRoot(), rows);
+		return computeSkylineRows(tree.store, rows.toArray(), 1);
+	}
+	
+	private static void collect(final Node n, final InputFeed.RowList rows)
+	{
+		if(n instanceof BucketNode)
+		{
+			final BucketNode bn = (BucketNode) n;
+			for(int i = 0; i < bn.reserved; ++i) rows.add(bn.data[i]);
+		}
+		else
+		{
+			collect(((DirectoryNode) n).left, rows);
+			collect(((DirectoryNode) n).right, rows);
+		}
+	}
+	
+	static int[] computeSkylineRows(final LevelStore store, final int[] rows, final int processes) throws InterruptedException
+	{
+		if(rows.length == 0) return rows;
+		final long[] keys = new long[rows.length];
+		for(int i = 0; i < rows.length; ++i) keys[i] = ((long) store.getLevel(rows[i], 0) << 32) | rows[i];
+		sort(keys, processes);
+		for(int i = 0; i < rows.length; ++i) rows[i] = (int) keys[i];
+		
+		if(store.dimensions == 2) return Arrays.copyOf(rows, sweep(store, rows, 0, rows.length, 0, 1));
+		if(store.dimensions == 3) return staircase(store, rows);
+		throw new IllegalArgumentException("Only two or three dimensions are supported: " + store.dimensions);
+	}
+	
+	/**
+	 * Two-dimensional skyline of rows sorted by the level of axis a. 
+	 * Among rows with the same level of a, only those with the least level of b can survive,
+	 * and they do if that level is less than the level of b of all rows before them.
+	 * @return the end of the skyline, which has been moved to the front of the range 
+	 */
+	private static int sweep(final LevelStore store, final int[] rows, final int from, final int to, final int a, final int b)
+	{
+		int best = Integer.MAX_VALUE;
+		int end = from;
+		for(int group = from; group < to; )
+		{
+			final int level = store.getLevel(rows[group], a);
+			int next = group;
+			int least = Integer.MAX_VALUE;
+			for(; next < to && store.getLevel(rows[next], a) == level; ++next) least = Math.min(least, store.getLevel(rows[next], b));
+			if(least < best)
+			{
+				for(int i = group; i < next; ++i) if(store.getLevel(rows[i], b) == least) rows[end++] = rows[i];
+				best = least;
+			}
+			group = next;
+		}
+		return end;
+	}
+	
+	/**
+	 * Three-dimensional skyline of rows sorted by their first level.
+	 * The staircase maps the second level to the least third level of the rows with a smaller first level; 
+	 * its third levels are strictly decreasing, so a single floor lookup decides whether a row is dominated.
+	 */
+	private static int[] staircase(final LevelStore store, final int[] rows)
+	{
+		final TreeMap<Integer,Integer> staircase = new TreeMap<Integer,Integer>();
+		int end = 0;
+		for(int group = 0; group < rows.length; )
+		{
+			final int level = store.getLevel(rows[group], 0);
+			int next = group;
+			while(next < rows.length && store.getLevel(rows[next], 0) == level) ++next;
+			
+			// rows with the same first level only dominate each other in the remaining two dimensions
+			store.sortByLevel(rows, group, next, 1);
+			final int groupEnd = sweep(store, rows, group, next, 1, 2);
+			final int first = end;
+			for(int i = group; i < groupEnd; ++i)
+			{
+				final Map.Entry<Integer,Integer> step = staircase.floorEntry(store.getLevel(rows[i], 1));
+				if(step == null || step.getValue() > store.getLevel(rows[i], 2)) rows[end++] = rows[i];
+			}
+			for(int i = first; i < end; ++i) insert(staircase, store.getLevel(rows[i], 1), store.getLevel(rows[i], 2));
+			group = next;
+		}
+		return Arrays.copyOf(rows, end);
+	}
+	
+	private static void insert(final TreeMap<Integer,Integer> staircase, final int y, final int z)
+	{
+		final Map.Entry<Integer,Integer> step = staircase.floorEntry(y);
+		if(step != null && step.getValue() <= z) return;
+		for(Iterator<Integer> it = staircase.tailMap(y, true).values().iterator(); it.hasNext(); )
+		{
+			if(it.next() < z) break;
+			it.remove();
+		}
+		staircase.put(y, z);
+	}
+	
+	/**
+	 * Sorts chunks of the keys concurrently and merges them pairwise, the merges of a round running concurrently as well.
+	 */
+	static void sort(final long[] keys, final int processes) throws InterruptedException
+	{
+		final int chunks = Integer.highestOneBit(Math.max(1, Math.min(processes, keys.length / InputFeed.MAX_CHUNK)));
+		if(chunks == 1)
+		{
+			Arrays.sort(keys);
+			return;
+		}
+		final int[] bounds = new int[chunks+1];
+		for(int i = 0; i <= chunks; ++i) bounds[i] = (int) ((long) keys.length * i / chunks);
+		
+		final Thread[] threads = new Thread[chunks];
+		for(int i = 0; i < chunks; ++i)
+		{
+			final int from = bounds[i], to = bounds[i+1];
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					Arrays.sort(keys, from, to);
+				}
+			};
+			threads[i].start();
+		}
+		for(final Thread thread : threads) thread.join();
+		
+		long[] source = keys;
+		long[] target = new long[keys.length];
+		for(int width = 1; width < chunks; width *= 2)
+		{
+			final long[] src = source, dst = target;
+			final int merges = chunks / (2*width);
+			for(int m = 0; m < merges; ++m)
+			{
+				final int from = bounds[2*m*width], middle = bounds[(2*m+1)*width], to = bounds[(2*m+2)*width];
+				threads[m] = new Thread() {
+					@Override
+					public void run() {
+						merge(src, from, middle, to, dst);
+					}
+				};
+				threads[m].start();
+			}
+			for(int m = 0; m < merges; ++m) threads[m].join();
+			source = dst;
+			target = src;
+		}
+		if(source != keys) System.arraycopy(source, 0, keys, 0, keys.length);
+	}
+	
+	private static void merge(final long[] src, final int from, final int middle, final int to, final long[] dst)
+	{
+		int i = from, j = middle, k = from;
+		while(i < middle && j < to) dst[k++] = src[i] <= src[j] ? src[i++] : src[j++];
+		while(i < middle) dst[k++] = src[i++];
+		while(j < to) dst[k++] = src[j++];
+	}
+}
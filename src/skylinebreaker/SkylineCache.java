@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import compat.BasicScoring;
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Skylines of recent queries, keyed by the dataset, its version and the scorings of the scoring function.
+ * Scoring functions are equal if their scorings are equal element by element, 
+ * so scorings must implement equals and hashCode, as {@link skylinebreaker.data.ProjectiveScoring} does, to match across instances;
+ * other scorings only match themselves.
+ * The cache holds at most a given number of skyline rows; the least recently used skylines are evicted first.
+ * Appending to a dataset starts a new version of it and drops its skylines.
+ * The version of a dataset is forgotten once it has no skylines and no skylines are computed for it.
+ * Engines run outside of the lock, so concurrent misses on the same key may compute the skyline more than once.
+ * Thread-safe.
+ */
+public final class SkylineCache {
+	
+	/**
+	 * Computes a skyline on a miss.
+	 */
+	public interface Engine
+	{
+		InputData[] evaluate(ScoringFunction scoringFunction) throws InterruptedException;
+	}
+	
+	private static final class Key
+	{
+		final Object dataset;
+		final long version;
+		final List<BasicScoring> scorings;
+		
+		Key(final Object dataset, final long version, final ScoringFunction scoringFunction)
+		{
+			this.dataset = dataset;
+			this.version = version;
+			this.scorings = Collections.unmodifiableList(Arrays.asList(scoringFunction.scorings.clone()));
+		}
+		
+		@Override
+		public boolean equals(final Object o)
+		{
+			if(!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return dataset.equals(other.dataset) && version == other.version && scorings.equals(other.scorings);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return (dataset.hashCode()*31 + (int) (version ^ (version >>> 32)))*31 + scorings.hashCode();
+		}
+	}
+	
+	private final long maxRows;
+	/** the version of a dataset with its cached skylines and the misses computing skylines for it */
+	private static final class Dataset
+	{
+		long version = 0;
+		int entries = 0;
+		int pending = 0;
+	}
+	
+	private final LinkedHashMap<Key, InputData[]> skylines = new LinkedHashMap<Key, InputData[]>(16, 0.75f, true);
+	private final Map<Object, Dataset> datasets = new HashMap<Object, Dataset>();
+	private long rows = 0;
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * @param maxRows the number of skyline rows the cache may hold
+	 */
+	public SkylineCache(final long maxRows)
+	{
+		this.maxRows = maxRows;
+	}
+	
+	/**
+	 * @param dataset identifies the dataset, e.g. its path; compared by equals
+	 * @return the cached skyline, or the skyline the engine computes for the scoring function
+	 */
+	public InputData[] get(final Object dataset, final ScoringFunction scoringFunction, final Engine engine) throws InterruptedException
+	{
+		final Key key;
+		synchronized(this)
+		{
+			Dataset d = datasets.get(dataset);
+			key = new Key(dataset, d == null ? 0 : d.version, scoringFunction);
+			final InputData[] skyline = skylines.get(key);
+			if(skyline != null)
+			{
+				++hits;
+				return skyline.clone();
+			}
+			++misses;
+			if(d == null)
+			{
+				d = new Dataset();
+				datasets.put(dataset, d);
+			}
+			++d.pending;
+		}
+		InputData[] skyline = null;
+		try
+		{
+			skyline = engine.evaluate(scoringFunction);
+		}
+		finally
+		{
+			put(key, skyline);
+		}
+		return skyline;
+	}
+	
+	/**
+	 * Starts a new version of the dataset after rows were appended to it and drops its skylines.
+	 */
+	public synchronized void appended(final Object dataset)
+	{
+		final Dataset d = datasets.get(dataset);
+		if(d == null) return;
+		++d.version;
+		for(final Iterator<Map.Entry<Key, InputData[]>> it = skylines.entrySet().iterator(); d.entries > 0 && it.hasNext();)
+		{
+			final Map.Entry<Key, InputData[]> e = it.next();
+			if(!e.getKey().dataset.equals(dataset)) continue;
+			rows -= e.getValue().length;
+			--d.entries;
+			it.remove();
+		}
+		release(dataset, d);
+	}
+	
+	public synchronized void clear()
+	{
+		skylines.clear();
+		rows = 0;
+		for(final Iterator<Dataset> it = datasets.values().iterator(); it.hasNext();)
+		{
+			final Dataset d = it.next();
+			d.entries = 0;
+			if(d.pending == 0) it.remove();
+		}
+	}
+	
+	/**
+	 * @return the number of skyline rows held
+	 */
+	public synchronized long rows()
+	{
+		return rows;
+	}
+	
+	public synchronized long hits()
+	{
+		return hits;
+	}
+	
+	public synchronized long misses()
+	{
+		return misses;
+	}
+	
+	/**
+	 * @return the number of datasets whose version is kept
+	 */
+	synchronized int datasets()
+	{
+		return datasets.size();
+	}
+	
+	private void release(final Object dataset, final Dataset d)
+	{
+		if(d.entries == 0 && d.pending == 0) datasets.remove(dataset);
+	}
+	
+	/**
+	 * Ends a miss. Skylines of versions that were superseded while they were computed are not stored.
+	 * @param skyline the computed skyline, null if the engine failed
+	 */
+	private synchronized void put(final Key key, final InputData[] skyline)
+	{
+		final Dataset d = datasets.get(key.dataset);
+		--d.pending;
+		if(skyline != null && skyline.length <= maxRows && key.version == d.version)
+		{
+			final InputData[] previous = skylines.put(key, skyline.clone());
+			if(previous != null) rows -= previous.length;
+			else ++d.entries;
+			rows += skyline.length;
+			for(final Iterator<Map.Entry<Key, InputData[]>> it = skylines.entrySet().iterator(); rows > maxRows;)
+			{
+				final Map.Entry<Key, InputData[]> e = it.next();
+				final Object evicted = e.getKey().dataset;
+				final Dataset owner = datasets.get(evicted);
+				rows -= e.getValue().length;
+				--owner.entries;
+				it.remove();
+				if(owner != d) release(evicted, owner);
+			}
+		}
+		release(key.dataset, d);
+	}
+}
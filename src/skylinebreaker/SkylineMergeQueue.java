@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package skylinebreaker;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the local skylines of the tree workers into a single skyline.
+ * The two smallest pending skylines are always merged first (like building a Huffman code), so a large skyline is not compared over and over against small ones.
+ * Merge threads are started on demand while there are pairs to merge and time out when idle.
+ */
+final class SkylineMergeQueue
+{
+	private static final Comparator<int[]> BY_SIZE = new Comparator<int[]>()
+	{
+		@Override
+		public int compare(final int[] a, final int[] b) {
+			return a.length < b.length ? -1 : (a.length == b.length ? 0 : 1);
+		}
+	};
+	
+	private final PriorityQueue<int[]> pending = new PriorityQueue<int[]>(16, BY_SIZE);
+	private final LevelStore store;
+	private final ThreadPoolExecutor mergePool;
+	private final int maxMerges;
+	private int runningMerges = 0;
+	private Throwable failure = null;
+	
+	SkylineMergeQueue(final LevelStore store, final int maxMerges)
+	{
+		this.store = store;
+		this.maxMerges = Math.max(maxMerges, 1);
+		mergePool = new ThreadPoolExecutor(this.maxMerges, this.maxMerges, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "SkylineMerge");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mergePool.allowCoreThreadTimeOut(true);
+	}
+	
+	synchronized void add(final int[] localSkyline)
+	{
+		pending.add(localSkyline);
+		schedule();
+	}
+	
+	/**
+	 * Waits for all merges to finish and shuts the merge threads down. 
+	 * @return the skyline of all added local skylines, or null if none was added
+	 */
+	synchronized int[] result() throws InterruptedException
+	{
+		while(runningMerges > 0 && failure == null) wait();
+		mergePool.shutdown();
+		if(failure != null) throw new IllegalStateException(failure);
+		assert pending.size() <= 1;
+		return pending.poll();
+	}
+	
+	/**
+	 * Pairs the smallest pending skylines as long as there are free merge slots. 
+	 * If all slots are busy, skylines keep accumulating, so the pairing is done on the most complete picture.
+	 */
+	private void schedule()
+	{
+		while(pending.size() >= 2 && runningMerges < maxMerges)
+		{
+			++runningMerges;
+			mergePool.execute(new Merge(pending.poll(), pending.poll()));
+		}
+	}
+	
+	private synchronized void merged(final int[] c, final Throwable e)
+	{
+		--runningMerges;
+		if(e != null) failure = e;
+		else
+		{
+			pending.add(c);
+			schedule();
+		}
+		notifyAll();
+	}
+	
+	private final class Merge implements Runnable
+	{
+		private final int[] a;
+		private final int[] b;
+		
+		Merge(final int[] a, final int[] b)
+		{
+			this.a = a;
+			this.b = b;
+		}
+		
+		@Override
+		public void run() {
+			try
+			{
+				merged(SBBase.combineLocalSkyline(store, a, b), null);
+			}
+			catch(Throwable e)
+			{
+				merged(null, e);
+			}
+		}
+	}
+}
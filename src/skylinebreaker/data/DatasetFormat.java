@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary row format of datasets.
+ * <pre>
+ * int   magic
+ * int   version
+ * int   dimensions
+ * long  rows
+ * int[] maximum level per dimension
+ * rows * dimensions levels, row by row
+ * </pre>
+ * A level takes 1, 2 or 4 bytes, the least width that holds the largest maximum; 1 and 2 byte levels are unsigned.
+ * All values are little endian.
+ */
+public final class DatasetFormat {
+	public static final int MAGIC = 0x534b594c; // "SKYL"
+	public static final int VERSION = 1;
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	
+	private DatasetFormat() {}
+	
+	public static int headerSize(final int dimensions)
+	{
+		return 4 + 4 + 4 + 8 + 4*dimensions;
+	}
+	
+	/**
+	 * @return the number of bytes a level takes
+	 */
+	public static int width(final int[] maxima)
+	{
+		int maximum = 0;
+		for(final int m : maxima) maximum = Math.max(maximum, m);
+		if(maximum <= 0xFF) return 1;
+		if(maximum <= 0xFFFF) return 2;
+		return 4;
+	}
+	
+	static ByteBuffer header(final long rows, final int[] maxima)
+	{
+		final ByteBuffer header = ByteBuffer.allocate(headerSize(maxima.length)).order(ORDER);
+		header.putInt(MAGIC).putInt(VERSION).putInt(maxima.length).putLong(rows);
+		for(final int maximum : maxima) header.putInt(maximum);
+		header.flip();
+		return header;
+	}
+	
+	/**
+	 * Encodes the levels at the position of the buffer.
+	 */
+	static void put(final ByteBuffer buffer, final int[] levels, final int width)
+	{
+		switch(width)
+		{
+		case 1: for(final int level : levels) buffer.put((byte) level); break;
+		case 2: for(final int level : levels) buffer.putShort((short) level); break;
+		default: buffer.asIntBuffer().put(levels); buffer.position(buffer.position() + 4*levels.length);
+		}
+	}
+	
+	static int get(final ByteBuffer buffer, final int index, final int width)
+	{
+		switch(width)
+		{
+		case 1: return buffer.get(index) & 0xFF;
+		case 2: return buffer.getShort(index) & 0xFFFF;
+		default: return buffer.getInt(index);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.data;
+
+/**
+ * The standard synthetic skyline workloads (Börzsönyi et al.).
+ * Every distribution draws points of the unit cube [0,1)^d.
+ */
+public enum Distribution {
+	/** points close to the diagonal: a point good in one dimension is good in the others, too */
+	CORRELATED
+	{
+		@Override
+		void next(final WorkloadGenerator.BlockRandom random, final double[] x, final double[][] centers)
+		{
+			do
+			{
+				final double base = 0.5 + random.nextGaussian()*0.25;
+				for(int i = 0; i < x.length; ++i) x[i] = base + random.nextGaussian()*0.05;
+			}
+			while(!inUnitCube(x));
+		}
+	},
+	INDEPENDENT
+	{
+		@Override
+		void next(final WorkloadGenerator.BlockRandom random, final double[] x, final double[][] centers)
+		{
+			for(int i = 0; i < x.length; ++i) x[i] = random.nextDouble();
+		}
+	},
+	/** points close to the hyperplane sum(x) = d/2: a point good in one dimension is bad in the others */
+	ANTI_CORRELATED
+	{
+		@Override
+		void next(final WorkloadGenerator.BlockRandom random, final double[] x, final double[][] centers)
+		{
+			do
+			{
+				final double plane = x.length * (0.5 + random.nextGaussian()*0.05);
+				double sum = 0;
+				for(int i = 0; i < x.length; ++i) sum += x[i] = -Math.log(1 - random.nextDouble());
+				for(int i = 0; i < x.length; ++i) x[i] = x[i] / sum * plane;
+			}
+			while(!inUnitCube(x));
+		}
+	},
+	/** gaussian clusters around centers drawn from the seed */
+	CLUSTERED
+	{
+		@Override
+		void next(final WorkloadGenerator.BlockRandom random, final double[] x, final double[][] centers)
+		{
+			final double[] center = centers[random.nextInt(centers.length)];
+			do
+			{
+				for(int i = 0; i < x.length; ++i) x[i] = center[i] + random.nextGaussian()*0.05;
+			}
+			while(!inUnitCube(x));
+		}
+	};
+	
+	abstract void next(final WorkloadGenerator.BlockRandom random, final double[] x, final double[][] centers);
+	
+	static boolean inUnitCube(final double[] x)
+	{
+		for(final double v : x) if(v < 0 || v >= 1) return false;
+		return true;
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import skylinebreaker.RowSource;
+
+import compat.BasicScoring;
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Read-only, memory-mapped view of a file in {@link DatasetFormat}.
+ * The rows stay in the page cache; nothing is copied onto the heap until a row is requested by {@link #get(long)}.
+ * Files larger than a single mapping are mapped in several regions, each holding a whole number of rows.
+ */
+public final class MappedDataset implements RowSource, Closeable {
+	static final long REGION_BYTES = 1L << 30;
+	
+	private final RandomAccessFile file;
+	private final int dimensions;
+	private final long rows;
+	private final int[] maxima;
+	private final int width;
+	private final int rowBytes;
+	private final long regionRows;
+	private final MappedByteBuffer[] regions;
+	
+	public MappedDataset(final File path) throws IOException
+	{
+		file = new RandomAccessFile(path, "r");
+		try
+		{
+			final FileChannel channel = file.getChannel();
+			final ByteBuffer fixed = ByteBuffer.allocate(DatasetFormat.headerSize(0)).order(DatasetFormat.ORDER);
+			while(fixed.hasRemaining()) if(channel.read(fixed, fixed.position()) < 0) throw new IOException("Truncated header in " + path);
+			fixed.flip();
+			if(fixed.getInt() != DatasetFormat.MAGIC) throw new IOException(path + " is not a dataset");
+			final int version = fixed.getInt();
+			if(version != DatasetFormat.VERSION) throw new IOException("Unsupported dataset version " + version + " in " + path);
+			dimensions = fixed.getInt();
+			rows = fixed.getLong();
+			
+			final ByteBuffer header = ByteBuffer.allocate(DatasetFormat.headerSize(dimensions)).order(DatasetFormat.ORDER);
+			while(header.hasRemaining()) if(channel.read(header, header.position()) < 0) throw new IOException("Truncated header in " + path);
+			header.position(DatasetFormat.headerSize(0));
+			maxima = new int[dimensions];
+			for(int i = 0; i < dimensions; ++i) maxima[i] = header.getInt();
+			width = DatasetFormat.width(maxima);
+			rowBytes = dimensions*width;
+			
+			final long offset = DatasetFormat.headerSize(dimensions);
+			if(channel.size() < offset + rows*rowBytes) throw new IOException("Truncated rows in " + path);
+			regionRows = Math.max(1, REGION_BYTES / rowBytes);
+			regions = new MappedByteBuffer[(int) ((rows + regionRows - 1) / regionRows)];
+			for(int r = 0; r < regions.length; ++r)
+			{
+				final long first = r*regionRows;
+				final long count = Math.min(regionRows, rows - first);
+				regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first*rowBytes, count*rowBytes);
+				regions[r].order(DatasetFormat.ORDER);
+			}
+		}
+		catch(IOException e)
+		{
+			file.close();
+			throw e;
+		}
+	}
+	
+	@Override
+	public long size()
+	{
+		return rows;
+	}
+	
+	@Override
+	public int getAttributes()
+	{
+		return dimensions;
+	}
+	
+	public int getMaximum(final int i)
+	{
+		return maxima[i];
+	}
+	
+	/**
+	 * @return a scoring function using the attributes as levels, with the maxima taken from the header
+	 */
+	public ScoringFunction getScoringFunction()
+	{
+		final BasicScoring[] scorings = new BasicScoring[dimensions];
+		for(int i = 0; i < dimensions; ++i) scorings[i] = new ProjectiveScoring(i, maxima[i]);
+		return new ScoringFunction(scorings);
+	}
+	
+	@Override
+	public void read(final long row, final int[] buffer)
+	{
+		final ByteBuffer region = regions[(int) (row / regionRows)];
+		final int offset = (int) (row % regionRows) * rowBytes;
+		for(int i = 0; i < dimensions; ++i) buffer[i] = DatasetFormat.get(region, offset + i*width, width);
+	}
+	
+	@Override
+	public InputData get(final long row)
+	{
+		final int[] v = new int[dimensions];
+		read(row, v);
+		return new InputData(v);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
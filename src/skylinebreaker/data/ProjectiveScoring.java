@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.data;
+
+import compat.BasicScoring;
+import compat.InputData;
+
+/**
+ * Uses an attribute of the input as its level.
+ */
+public final class ProjectiveScoring implements BasicScoring {
+	final int pos;
+	final int maximum;
+	
+	public ProjectiveScoring(final int pos, final int maximum)
+	{
+		this.pos = pos;
+		this.maximum = maximum;
+	}
+	
+	@Override
+	public int evaluate(final InputData x) {
+		return x.get(pos);
+	}
+
+	@Override
+	public int getMaximum() {
+		return maximum;
+	}
+	
+	/**
+	 * Scorings projecting the same attribute with the same maximum are equal, so equal scoring functions can be recognized.
+	 */
+	@Override
+	public boolean equals(final Object o) {
+		if(!(o instanceof ProjectiveScoring)) return false;
+		final ProjectiveScoring other = (ProjectiveScoring) o;
+		return pos == other.pos && maximum == other.maximum;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31*pos + maximum;
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package skylinebreaker.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import compat.BasicScoring;
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Reproducible generator of synthetic skyline workloads.
+ * The rows are generated in blocks of {@value #BLOCK_ROWS} rows, each drawn from its own random sequence derived from
+ * the seed and the block number. Hence the output only depends on the seed and not on the number of threads generating it.
+ * Rows are never collected: they are streamed block-wise to a file or handed out lazily by {@link #iterator()}.
+ */
+public final class WorkloadGenerator {
+	static final int BLOCK_ROWS = 1 << 16;
+	static final int CLUSTERS = 10;
+	
+	public final Distribution distribution;
+	public final int dimensions;
+	public final long rows;
+	public final long seed;
+	private final int[] levels;
+	private final double[][] centers;
+	
+	/**
+	 * @param levels number of levels of each dimension; generated levels are in [0, levels[i])
+	 */
+	public WorkloadGenerator(final Distribution distribution, final int[] levels, final long rows, final long seed)
+	{
+		this.distribution = distribution;
+		this.dimensions = levels.length;
+		this.levels = levels.clone();
+		this.rows = rows;
+		this.seed = seed;
+		this.centers = new double[CLUSTERS][dimensions];
+		final BlockRandom random = new BlockRandom(seed, -1);
+		for(final double[] center : centers)
+			for(int i = 0; i < dimensions; ++i) center[i] = 0.1 + 0.8*random.nextDouble();
+	}
+	
+	public WorkloadGenerator(final Distribution distribution, final int dimensions, final int levels, final long rows, final long seed)
+	{
+		this(distribution, filled(dimensions, levels), rows, seed);
+	}
+	
+	private static int[] filled(final int dimensions, final int value)
+	{
+		final int[] array = new int[dimensions];
+		Arrays.fill(array, value);
+		return array;
+	}
+	
+	public int[] getMaxima()
+	{
+		final int[] maxima = new int[dimensions];
+		for(int i = 0; i < dimensions; ++i) maxima[i] = levels[i]-1;
+		return maxima;
+	}
+	
+	/**
+	 * @return a scoring function using the generated attributes as levels
+	 */
+	public ScoringFunction getScoringFunction()
+	{
+		final BasicScoring[] scorings = new BasicScoring[dimensions];
+		for(int i = 0; i < dimensions; ++i) scorings[i] = new ProjectiveScoring(i, levels[i]-1);
+		return new ScoringFunction(scorings);
+	}
+	
+	long blocks()
+	{
+		return (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+	}
+	
+	/**
+	 * @return the levels of the rows of the block, row by row
+	 */
+	int[] generateBlock(final long block)
+	{
+		final int count = (int) Math.min(BLOCK_ROWS, rows - block*BLOCK_ROWS);
+		final int[] data = new int[count*dimensions];
+		final BlockRandom random = new BlockRandom(seed, block);
+		final double[] x = new double[dimensions];
+		for(int row = 0, o = 0; row < count; ++row)
+		{
+			distribution.next(random, x, centers);
+			for(int i = 0; i < dimensions; ++i) data[o++] = Math.min(levels[i]-1, (int) (x[i]*levels[i]));
+		}
+		return data;
+	}
+	
+	/**
+	 * Writes the rows in {@link DatasetFormat} to the file.
+	 * @param threads number of threads generating blocks ahead of the writer
+	 */
+	public void write(final File file, final int threads) throws IOException, InterruptedException
+	{
+		final BlockPipeline pipeline = new BlockPipeline(threads);
+		final FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			final FileChannel channel = out.getChannel();
+			final ByteBuffer header = DatasetFormat.header(rows, getMaxima());
+			while(header.hasRemaining()) channel.write(header);
+			final int width = DatasetFormat.width(getMaxima());
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_ROWS*dimensions*width).order(DatasetFormat.ORDER);
+			while(pipeline.hasNext())
+			{
+				final int[] block = pipeline.next();
+				buffer.clear();
+				DatasetFormat.put(buffer, block, width);
+				buffer.flip();
+				while(buffer.hasRemaining()) channel.write(buffer);
+			}
+		}
+		catch(ExecutionException e)
+		{
+			throw new IOException(e.getCause());
+		}
+		finally
+		{
+			pipeline.close();
+			out.close();
+		}
+	}
+	
+	/**
+	 * @return a lazy iterator over the rows, generated on the calling thread
+	 */
+	public Iterator<InputData> iterator()
+	{
+		return iterator(1);
+	}
+	
+	/**
+	 * @param threads number of threads generating blocks ahead of the consumer
+	 * @return a lazy iterator over the rows
+	 */
+	public Iterator<InputData> iterator(final int threads)
+	{
+		return new Iterator<InputData>()
+		{
+			final BlockPipeline pipeline = new BlockPipeline(threads);
+			int[] block = new int[0];
+			int position = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return position < block.length || pipeline.hasNext();
+			}
+
+			@Override
+			public InputData next() {
+				if(position == block.length)
+				{
+					if(!pipeline.hasNext()) throw new NoSuchElementException();
+					try
+					{
+						block = pipeline.next();
+					}
+					catch(InterruptedException e)
+					{
+						pipeline.close();
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException(e);
+					}
+					catch(ExecutionException e)
+					{
+						pipeline.close();
+						throw new IllegalStateException(e.getCause());
+					}
+					position = 0;
+					if(!pipeline.hasNext()) pipeline.close();
+				}
+				final int[] v = Arrays.copyOfRange(block, position, position+dimensions);
+				position += dimensions;
+				return new InputData(v);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * Hands out the blocks in order while up to two blocks per thread are generated ahead.
+	 */
+	private final class BlockPipeline
+	{
+		private final ThreadPoolExecutor executor;
+		private final int ahead;
+		private final Queue<Future<int[]>> pending = new ArrayDeque<Future<int[]>>();
+		private long nextBlock = 0;
+		private long handedOut = 0;
+		
+		BlockPipeline(final int threads)
+		{
+			this.ahead = 2*threads;
+			if(threads > 1)
+			{
+				executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "WorkloadGenerator");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				executor.allowCoreThreadTimeOut(true);
+				fill();
+			}
+			else executor = null;
+		}
+		
+		private void fill()
+		{
+			while(nextBlock < blocks() && pending.size() < ahead)
+			{
+				final long block = nextBlock++;
+				pending.add(executor.submit(new Callable<int[]>()
+				{
+					@Override
+					public int[] call() {
+						return generateBlock(block);
+					}
+				}));
+			}
+		}
+		
+		boolean hasNext()
+		{
+			return handedOut < blocks();
+		}
+		
+		int[] next() throws InterruptedException, ExecutionException
+		{
+			if(executor == null) return generateBlock(handedOut++);
+			final Future<int[]> block = pending.poll();
+			++handedOut;
+			fill();
+			return block.get();
+		}
+		
+		void close()
+		{
+			if(executor != null) executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * SplitMix64 sequence; cheap to seed per block and identical on every platform.
+	 */
+	static final class BlockRandom
+	{
+		private long state;
+		private double nextGaussian;
+		private boolean haveNextGaussian = false;
+		
+		BlockRandom(final long seed, final long block)
+		{
+			state = seed;
+			state = nextLong() ^ block * 0x9E3779B97F4A7C15L;
+		}
+		
+		long nextLong()
+		{
+			long z = (state += 0x9E3779B97F4A7C15L);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+		
+		double nextDouble()
+		{
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+		
+		int nextInt(final int n)
+		{
+			return (int) ((nextLong() >>> 1) % n);
+		}
+		
+		double nextGaussian()
+		{
+			if(haveNextGaussian)
+			{
+				haveNextGaussian = false;
+				return nextGaussian;
+			}
+			double v1, v2, s;
+			do
+			{
+				v1 = 2*nextDouble() - 1;
+				v2 = 2*nextDouble() - 1;
+				s = v1*v1 + v2*v2;
+			}
+			while(s >= 1 || s == 0);
+			final double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+			nextGaussian = v2 * multiplier;
+			haveNextGaussian = true;
+			return v1 * multiplier;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2013, University of Augsburg, Dominik Köppl <niki@users.berlios.de>
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 	* Redistributions of source code must retain the above copyright
+ * 	  notice, this list of conditions and the following disclaimer.
+ * 	* Redistributions in binary form must reproduce the above copyright
+ * 	  notice, this list of conditions and the following disclaimer in the
+ * 	  documentation and/or other materials provided with the distribution.
+ * 	* Neither the name of the <organization> nor the
+ * 	  names of its contributors may be used to endorse or promote products
+ * 	  derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+
+package skylinebreaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import skylinebreaker.data.Distribution;
+import skylinebreaker.data.WorkloadGenerator;
+
+import compat.InputData;
+import compat.ScoringFunction;
+
+/**
+ * Differential check of all engines against a naive O(n^2) skyline on generated workloads.
+ * Parallel engines run with several thread counts; the shared pruning tree is run repeatedly, as its threshold is shared by all workers.
+ * The engines hand queries in two and three dimensions over to SBSweep, so these are checked once more in a second JVM
+ * with the system property {@code skylinebreaker.sweep} set to false, which builds the trees instead.
+ * Run the class; it prints every mismatch and exits with status 1 if there was one.
+ */
+public final class DifferentialCheck {
+	
+	private static final int ROWS = 3000;
+	private static final int WINDOW = 500;
+	private static final int SKYBAND = 3;
+	private static final int SHARED_ROUNDS = 5;
+	private static final long SEED = 4711;
+	
+	private final List<String> failures = new ArrayList<String>();
+	
+	/**
+	 * @param args the dimensionalities to check, by default 2, 3, 5 and 8
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		final DifferentialCheck check = new DifferentialCheck();
+		if(args.length > 0)
+		{
+			for(final Distribution distribution : Distribution.values())
+				for(final String dimensions : args)
+					for(final int levels : new int[] { 8, 1000 })
+						check.run(distribution, Integer.parseInt(dimensions), levels);
+		}
+		else
+		{
+			for(final Distribution distribution : Distribution.values())
+			{
+				for(final int dimensions : new int[] { 2, 3, 5 })
+					for(final int levels : new int[] { 8, 1000 })
+						check.run(distribution, dimensions, levels);
+				check.run(distribution, 8, 16);
+			}
+			if(SBSweep.ENABLED && withoutSweep("2", "3") != 0) check.failures.add("engines without SBSweep in 2 and 3 dimensions");
+		}
+		for(final String failure : check.failures) System.out.println("FAIL " + failure);
+		System.out.println(check.failures.isEmpty() ? "all engines agree" : check.failures.size() + " mismatches");
+		if(!check.failures.isEmpty()) System.exit(1);
+	}
+	
+	/**
+	 * Checks the dimensionalities in a JVM with the same class path and {@code skylinebreaker.sweep=false}.
+	 * @return the exit status of the JVM
+	 */
+	private static int withoutSweep(final String... dimensions) throws IOException, InterruptedException
+	{
+		final List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.add("-Dskylinebreaker.sweep=false");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DifferentialCheck.class.getName());
+		command.addAll(Arrays.asList(dimensions));
+		System.out.println("without SBSweep:");
+		return new ProcessBuilder(command).inheritIO().start().waitFor();
+	}
+	
+	private void run(final Distribution distribution, final int dimensions, final int levels) throws Exception
+	{
+		final WorkloadGenerator generator = new WorkloadGenerator(distribution, dimensions, levels, ROWS, SEED);
+		final ScoringFunction f = generator.getScoringFunction();
+		final List<InputData> rows = new ArrayList<InputData>(ROWS);
+		for(final Iterator<InputData> it = generator.iterator(); it.hasNext();) rows.add(it.next());
+		final RowSource source = new ListSource(rows, dimensions);
+		final String tag = distribution + " d=" + dimensions + " levels=" + levels + ": ";
+		final List<String> expected = naiveSkyline(rows, dimensions, (1 << dimensions) - 1);
+		
+		final LSDAbstractTree.LSDAbstractTreeFactory[] factories = { 
+				new LSDSimpleTree.LSDSimpleTreeFactory(), new LSDPruningTree.LSDPruningTreeFactory() };
+		for(final LSDAbstractTree.LSDAbstractTreeFactory factory : factories)
+		{
+			final String t = tag + factory.getClass().getSimpleName() + " ";
+			check(t + "SBSingle", expected, new SBSingle(fill(factory, rows, f)).computeSkyline());
+			final LSDAbstractTree tree = fill(factory, rows, f);
+			check(t + "SBSingle tree", expected, tree.store.getRows(new SBSingle(tree).computeTreeSkylineRows()));
+			check(t + "SBProgressive", expected, drain(new SBProgressive(fill(factory, rows, f))));
+			for(final int processes : new int[] { 1, 4 })
+				check(t + "bulk " + processes, expected, new SBSingle(LSDAbstractTree.load(factory, rows.iterator(), f, processes)).computeSkyline());
+			for(final int processes : new int[] { 1, 2, 4 })
+			{
+				check(t + "SBQuick " + processes, expected, SBQuick.evaluate(processes, factory, rows.iterator(), f));
+				check(t + "SBQuickCNN " + processes, expected, SBQuickCNN.evaluate(processes, factory, rows.iterator(), f));
+				check(t + "SBFork " + processes, expected, new SBFork(processes, factory, rows.iterator(), f).compute());
+				check(t + "SBQuick source " + processes, expected, SBQuick.evaluate(processes, factory, source, f));
+				check(t + "SBFork source " + processes, expected, new SBFork(processes, factory, source, f).compute());
+			}
+		}
+		for(int round = 0; round < SHARED_ROUNDS; ++round)
+		{
+			for(final int processes : new int[] { 2, 4, 8 })
+			{
+				check(tag + "shared SBQuick " + processes, expected, SBQuick.evaluate(processes, new LSDSharedPruningTree.LSDSharedPruningTreeFactory(), rows.iterator(), f));
+				check(tag + "shared SBFork " + processes, expected, new SBFork(processes, new LSDSharedPruningTree.LSDSharedPruningTreeFactory(), rows.iterator(), f).compute());
+			}
+		}
+		if(SBSweep.isApplicable(f)) check(tag + "SBSweep", expected, SBSweep.evaluate(2, rows.iterator(), f));
+		if(SBLattice.isApplicable(f))
+		{
+			check(tag + "SBLattice", expected, SBLattice.evaluate(rows.iterator(), f));
+			check(tag + "SBLattice source", expected, SBLattice.evaluate(source, f));
+			for(final int processes : new int[] { 1, 3 })
+				check(tag + "SBLatticeFork " + processes, expected, new SBLatticeFork(processes, rows.iterator(), f).compute());
+		}
+		
+		final SBIncremental incremental = new SBIncremental(f);
+		incremental.addAll(rows.subList(0, ROWS/2).iterator());
+		for(final InputData row : rows.subList(ROWS/2, ROWS)) incremental.add(row);
+		check(tag + "SBIncremental", expected, incremental.getSkyline());
+		
+		final SBSlidingWindow window = SBSlidingWindow.countBased(f, WINDOW);
+		for(final InputData row : rows) window.add(row);
+		check(tag + "SBSlidingWindow", naiveSkyline(rows.subList(ROWS - WINDOW, ROWS), dimensions, (1 << dimensions) - 1), window.getSkyline());
+		
+		checkSkyband(tag, rows, dimensions, f);
+		
+		if(dimensions <= 5)
+		{
+			final SBSkycube cube = new SBSkycube(2, rows.iterator(), f);
+			cube.compute();
+			for(int mask = 1; mask < 1 << dimensions; ++mask)
+				check(tag + "SBSkycube " + Integer.toBinaryString(mask), naiveSkyline(rows, dimensions, mask), cube.getSkyline(mask));
+		}
+	}
+	
+	private void checkSkyband(final String tag, final List<InputData> rows, final int dimensions, final ScoringFunction f) throws InterruptedException
+	{
+		final int all = (1 << dimensions) - 1;
+		final int[] dominators = new int[rows.size()];
+		final int[] dominated = new int[rows.size()];
+		for(int i = 0; i < rows.size(); ++i)
+			for(int j = 0; j < rows.size(); ++j)
+				if(dominates(rows.get(i), rows.get(j), dimensions, all)) { ++dominated[i]; ++dominators[j]; }
+		
+		final List<String> skyband = new ArrayList<String>();
+		for(int i = 0; i < rows.size(); ++i) if(dominators[i] < SKYBAND) skyband.add(rows.get(i).toString());
+		Collections.sort(skyband);
+		final int[] counts = dominated.clone();
+		Arrays.sort(counts);
+		final List<String> top = new ArrayList<String>();
+		for(int i = 0; i < SKYBAND; ++i) top.add(Integer.toString(counts[counts.length-1-i]));
+		
+		final LSDAbstractTree tree = LSDAbstractTree.load(new LSDSimpleTree.LSDSimpleTreeFactory(), rows.iterator(), f, 1);
+		check(tag + "SBSkyband", skyband, new SBSkyband(tree).computeSkyband(SKYBAND));
+		check(tag + "SBSkybandFork", skyband, new SBSkybandFork(3, tree).computeSkyband(SKYBAND));
+		checkCounts(tag + "SBSkyband top", top, new SBSkyband(tree).computeTopDominating(SKYBAND), rows, dominated);
+		checkCounts(tag + "SBSkybandFork top", top, new SBSkybandFork(3, tree).computeTopDominating(SKYBAND), rows, dominated);
+	}
+	
+	/**
+	 * Ties make the top-k dominating rows ambiguous, so only the numbers of rows they dominate are compared.
+	 */
+	private void checkCounts(final String name, final List<String> expected, final InputData[] got, final List<InputData> rows, final int[] dominated)
+	{
+		final List<String> counts = new ArrayList<String>();
+		for(final InputData row : got) 
+			for(int i = 0; i < rows.size(); ++i) 
+				if(rows.get(i) == row) counts.add(Integer.toString(dominated[i]));
+		if(!counts.equals(expected)) failures.add(name + ": expected " + expected + ", got " + counts);
+	}
+	
+	private void check(final String name, final List<String> expected, final InputData[] got)
+	{
+		final List<String> rows = new ArrayList<String>(got.length);
+		for(final InputData row : got) rows.add(row.toString());
+		Collections.sort(rows);
+		if(!rows.equals(expected)) failures.add(name + ": expected " + expected.size() + " rows, got " + rows.size());
+	}
+	
+	private static List<String> naiveSkyline(final List<InputData> rows, final int dimensions, final int mask)
+	{
+		final List<String> skyline = new ArrayList<String>();
+		outer: for(final InputData row : rows)
+		{
+			for(final InputData other : rows) if(dominates(other, row, dimensions, mask)) continue outer;
+			skyline.add(row.toString());
+		}
+		Collections.sort(skyline);
+		return skyline;
+	}
+	
+	private static boolean dominates(final InputData a, final InputData b, final int dimensions, final int mask)
+	{
+		boolean better = false;
+		for(int i = 0; i < dimensions; ++i)
+		{
+			if((mask & (1 << i)) == 0) continue;
+			if(a.get(i) > b.get(i)) return false;
+			if(a.get(i) < b.get(i)) better = true;
+		}
+		return better;
+	}
+	
+	private static LSDAbstractTree fill(final LSDAbstractTree.LSDAbstractTreeFactory factory, final List<InputData> rows, final ScoringFunction f)
+	{
+		final Iterator<InputData> it = rows.iterator();
+		final LSDAbstractTree tree = factory.get(new LevelStore(f), it.next());
+		while(it.hasNext()) tree.add(it.next());
+		return tree;
+	}
+	
+	private static InputData[] drain(final Iterator<InputData> it)
+	{
+		final List<InputData> rows = new ArrayList<InputData>();
+		while(it.hasNext()) rows.add(it.next());
+		return rows.toArray(new InputData[rows.size()]);
+	}
+	
+	private static final class ListSource implements RowSource
+	{
+		private final List<InputData> rows;
+		private final int attributes;
+		
+		ListSource(final List<InputData> rows, final int attributes)
+		{
+			this.rows = rows;
+			this.attributes = attributes;
+		}
+		
+		@Override
+		public long size()
+		{
+			return rows.size();
+		}
+		
+		@Override
+		public int getAttributes()
+		{
+			return attributes;
+		}
+		
+		@Override
+		public void read(final long row, final int[] buffer)
+		{
+			final InputData data = rows.get((int) row);
+			for(int i = 0; i < attributes; ++i) buffer[i] = data.get(i);
+		}
+		
+		@Override
+		public InputData get(final long row)
+		{
+			return rows.get((int) row);
+		}
+	}
+}